@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compact binary frame, for car firmware that accepts binary WebSocket
+ * messages. All numbers are big-endian:
+ *
+ * <pre>
+ * byte    version, currently 1
+ * byte    1 for a throttle instruction, 2 for a turning instruction
+ * short   the throttle, or the amount of turn
+ * long    the message group, the same number as the hex msggrp in the JSON format
+ * byte    the length of the user id in bytes, up to 255
+ * byte[]  the user id, UTF-8
+ * </pre>
+ *
+ * A user id too long for the frame is sent as JSON instead.
+ */
+public class BinaryCarFrameCodec implements CarFrameCodec {
+    public static final byte VERSION = 1;
+    public static final byte THROTTLE = 1;
+    public static final byte TURNING = 2;
+
+    private static final int HEADER_LENGTH = 1 + 1 + 2 + 8 + 1;
+
+    @Override
+    public CarFrame encode(CarInstruction instruction) {
+        byte[] userid = instruction.getUserid().getBytes(StandardCharsets.UTF_8);
+        if (userid.length > 255) {
+            return JSON.encode(instruction);
+        }
+        CarDirection direction = instruction.getDirection();
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + userid.length);
+        frame.put(VERSION);
+        frame.put(direction.isTimed() ? THROTTLE : TURNING);
+        frame.putShort((short) direction.amount(instruction.getValue()));
+        frame.putLong(instruction.getGroup());
+        frame.put((byte) userid.length);
+        frame.put(userid);
+        return CarFrame.binary(instruction, frame.array());
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.io.IOException;
+
+import javax.naming.InitialContext;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+import net.wasdev.gameon.render.AsciiCache;
+import net.wasdev.gameon.render.AsciiRenderer;
+import net.wasdev.gameon.render.Snapshot;
+
+/**
+ * The latest picture from the car, and its renders as ASCII art. Pictures are
+ * posted to {@link SnapshotServlet} and players see them with <code>/view</code>.
+ */
+public class CarCamera {
+    public static final int MIN_COLUMNS = 20;
+    public static final int MAX_COLUMNS = 200;
+    // as wide as the portraits the room ships with
+    public static final int DEFAULT_COLUMNS = 114;
+
+    private static final CarCamera camera = new CarCamera(getIntJNDIEntry("snapshotCacheSize", 32));
+
+    static {
+        camera.cache.registerMetrics(MetricsRegistry.getDefault(), "snapshot");
+    }
+
+    private final AsciiCache cache;
+    private volatile Snapshot latest;
+
+    /**
+     * @param cacheSize
+     *            how many renders to keep
+     */
+    public CarCamera(int cacheSize) {
+        this.cache = new AsciiCache(new AsciiRenderer(), cacheSize);
+    }
+
+    public static CarCamera getDefault() {
+        return camera;
+    }
+
+    /**
+     * Keep a new picture, in place of the last one.
+     *
+     * @throws IOException
+     *             if it is not an image
+     */
+    public Snapshot update(byte[] image) throws IOException {
+        Snapshot snapshot = Snapshot.read(image);
+        latest = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * @param columns
+     *            characters per line, between {@link #MIN_COLUMNS} and
+     *            {@link #MAX_COLUMNS}
+     * @return the latest picture as ASCII art, or null if there is none yet
+     */
+    public String view(int columns) {
+        Snapshot snapshot = latest;
+        if (snapshot == null) {
+            return null;
+        }
+        if (columns < MIN_COLUMNS || columns > MAX_COLUMNS) {
+            throw new IllegalArgumentException("columns must be between " + MIN_COLUMNS + " and " + MAX_COLUMNS);
+        }
+        return cache.render(snapshot, columns);
+    }
+
+    private static int getIntJNDIEntry(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(String.valueOf(new InitialContext().lookup(name)));
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+}
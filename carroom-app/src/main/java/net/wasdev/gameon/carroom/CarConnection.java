@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import javax.websocket.CloseReason;
+import javax.websocket.ContainerProvider;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.Session;
+
+/**
+ * Manages the WebSocket connection to the car.
+ *
+ * Connecting happens on a background thread, starting as soon as {@link #start()}
+ * is called. Whenever the connection drops it is retried with exponential backoff,
+ * so callers only ever need to check {@link #isReady()}, which never blocks.
+ */
+public class CarConnection {
+    private static final long INITIAL_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    private final URI endpoint;
+    private final Consumer<String> listener;
+    private final Consumer<CloseReason> closeListener;
+    private final ScheduledExecutorService connector = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "car-connection");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile Session session = null;
+    private volatile boolean ready = false;
+    private volatile boolean stopped = false;
+    private long backoff = INITIAL_BACKOFF_MS;
+
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param endpoint
+     *            the car's WebSocket URL
+     * @param listener
+     *            called with each message the car sends back
+     */
+    public CarConnection(URI endpoint, Consumer<String> listener) {
+        this(endpoint, listener, reason -> {
+        });
+    }
+
+    /**
+     * @param endpoint
+     *            the car's WebSocket URL
+     * @param listener
+     *            called with each message the car sends back
+     * @param closeListener
+     *            called with the reason whenever the car closes the connection
+     */
+    public CarConnection(URI endpoint, Consumer<String> listener, Consumer<CloseReason> closeListener) {
+        this.endpoint = endpoint;
+        this.listener = listener;
+        this.closeListener = closeListener;
+    }
+
+    /**
+     * Start connecting in the background.
+     */
+    public void start() {
+        submit(this::connect, 0);
+    }
+
+    /**
+     * Close the connection and stop reconnecting.
+     */
+    public void stop() {
+        stopped = true;
+        ready = false;
+        connector.shutdownNow();
+        Session s = session;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    /**
+     * @return true if the car is connected and can be sent instructions
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Send a message to the car.
+     *
+     * @throws IOException
+     *             if the car is not connected, or the send fails
+     */
+    public void send(String message) throws IOException {
+        Session s = session;
+        if (!ready || s == null) {
+            throw new IOException("Car is not connected");
+        }
+        s.getBasicRemote().sendText(message);
+    }
+
+    /**
+     * Send a binary message to the car.
+     *
+     * @throws IOException
+     *             if the car is not connected, or the send fails
+     */
+    public void send(ByteBuffer message) throws IOException {
+        Session s = session;
+        if (!ready || s == null) {
+            throw new IOException("Car is not connected");
+        }
+        s.getBasicRemote().sendBinary(message);
+    }
+
+    public URI getEndpoint() {
+        return endpoint;
+    }
+
+    public long getConnectCount() {
+        return connects.get();
+    }
+
+    public long getDisconnectCount() {
+        return disconnects.get();
+    }
+
+    public long getFailedConnectCount() {
+        return failures.get();
+    }
+
+    private void connect() {
+        if (stopped || ready) {
+            return;
+        }
+        Log.log(Level.INFO, this, "Connecting to car at : " + endpoint);
+        try {
+            ContainerProvider.getWebSocketContainer().connectToServer(new CarEndpoint(), null, endpoint);
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            Log.log(Level.WARNING, this, "Unable to connect to car at : " + endpoint + " " + e);
+            retry();
+        }
+    }
+
+    private synchronized void retry() {
+        long delay = backoff;
+        backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        Log.log(Level.INFO, this, "Reconnecting to car in " + delay + "ms");
+        submit(this::connect, delay);
+    }
+
+    private synchronized void connected(Session s) {
+        backoff = INITIAL_BACKOFF_MS;
+        session = s;
+        ready = true;
+        connects.incrementAndGet();
+    }
+
+    private synchronized void disconnected(Session s) {
+        // onError and onClose can both be called for the same session
+        if (session != s) {
+            return;
+        }
+        ready = false;
+        session = null;
+        disconnects.incrementAndGet();
+        if (!stopped) {
+            retry();
+        }
+    }
+
+    private void submit(Runnable task, long delay) {
+        if (stopped) {
+            return;
+        }
+        try {
+            connector.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopped while we were deciding to reconnect
+        }
+    }
+
+    private class CarEndpoint extends Endpoint {
+
+        @Override
+        public void onOpen(Session s, EndpointConfig config) {
+            s.addMessageHandler(String.class, message -> listener.accept(message));
+            connected(s);
+            Log.log(Level.INFO, CarConnection.this, "Connected to car at : " + endpoint);
+        }
+
+        @Override
+        public void onClose(Session s, CloseReason closeReason) {
+            Log.log(Level.INFO, CarConnection.this, "Car has closed the connection.", closeReason);
+            disconnected(s);
+            closeListener.accept(closeReason);
+        }
+
+        @Override
+        public void onError(Session s, Throwable thr) {
+            Log.log(Level.INFO, CarConnection.this, "Error with car connection.", thr.getMessage());
+            disconnected(s);
+        }
+    }
+}
@@ -15,12 +15,24 @@
  *******************************************************************************/
 package net.wasdev.gameon.carroom;
 
-import net.wasdev.gameon.carroom.CarDirection;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
 
-public class CarDriverImpl implements CarDriver {
-    
-  public void sendInstruction(CarDirection direction, long quantity) {
-    System.out.println("Test: recieved instruction " + direction + "("+quantity+")");
-  }
-  
+/**
+ * Connects to the car as soon as the application starts, rather than when the
+ * first drive command arrives, and disconnects when it stops.
+ */
+@WebListener
+public class CarControllerListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        CarRoom.startCar();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        CarRoom.stopCar();
+    }
 }
@@ -15,18 +15,70 @@
  *******************************************************************************/
 package net.wasdev.gameon.carroom;
 
+/**
+ * The ways the car can be driven, and how each maps onto the car's protocol.
+ *
+ * Steering commands take a lock between 0 and 100 and are sent once, while
+ * throttle commands take a number of seconds and are sent as a stream of 50ms
+ * pulses.
+ */
 public enum CarDirection {   
-    LEFT(0, -100), RIGHT(0, 100), FORWARDS(20, 0), BACKWARDS(-75, 0);
+    LEFT(0, -1, 100, false), RIGHT(0, 1, 100, false), FORWARDS(20, 0, 10, true), BACKWARDS(-70, 0, 10, true);
     
-    CarDirection(long throttle, long lock) {
+    CarDirection(long throttle, long lock, long maxValue, boolean timed) {
         this.lock = lock;
         this.throttle = throttle;
+        this.maxValue = maxValue;
+        this.timed = timed;
     }
     
     private final long lock;
     private final long throttle;
-    
-    String toJSON() {
-        return "'throttle':" + throttle + ",'turning':" + lock;
+    private final long maxValue;
+    private final boolean timed;
+
+    /**
+     * Check that a value is in range for this direction.
+     *
+     * @throws NumberFormatException with a message for the player if it is not
+     */
+    void validate(long value) throws NumberFormatException {
+        if((value < 0) || (value > maxValue)) {
+            if(timed) {
+                throw new NumberFormatException("ERROR : The forwards and backwards commands have an integer value between 0 and " + maxValue + " (inclusive)");
+            }
+            throw new NumberFormatException("ERROR : The left and right commands have an integer value between 0 and " + maxValue + " (inclusive)");
+        }
+    }
+
+    /**
+     * @return how many 50ms pulses an instruction with this value is sent for
+     */
+    int pulses(long value) {
+        return timed ? (int)(value * 20) : 1;      //convert seconds to a 50ms pulse
+    }
+
+    /**
+     * @return the throttle or turning part of an instruction sent to the car
+     */
+    String toJSON(long value) {
+        if(timed) {
+            return "'throttle':" + throttle;
+        }
+        return "'turning':" + (lock * value);
+    }
+
+    /**
+     * @return true if the instruction sets the throttle, false if it turns
+     */
+    boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * @return the throttle, or the amount of turn, an instruction with this value sends
+     */
+    long amount(long value) {
+        return timed ? throttle : lock * value;
     }
 }
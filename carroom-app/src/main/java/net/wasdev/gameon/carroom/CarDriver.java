@@ -15,9 +15,53 @@
  *******************************************************************************/
 package net.wasdev.gameon.carroom;
 
-
+/**
+ * Everything needed to drive a car: turning player commands into instructions,
+ * queueing them, pulsing them out every 50ms and putting them on the wire.
+ *
+ * @see WebSocketCarDriver
+ * @see RecordingCarDriver
+ * @see NoOpCarDriver
+ */
 public interface CarDriver {
-  
-    public void sendInstruction(CarDirection direction, long quantity);
+
+    /**
+     * Start connecting to the car and sending it queued instructions.
+     */
+    public void start();
+
+    /**
+     * Stop sending and disconnect.
+     */
+    public void stop();
+
+    /**
+     * @return true if instructions sent now will reach the car
+     */
+    public boolean isReady();
+
+    /**
+     * Queue an instruction from a player.
+     *
+     * @param userid the player driving
+     * @param direction which way to drive
+     * @param quantity the lock or number of seconds, depending on the direction
+     * @return the queued instruction, or null if the car is not ready
+     * @throws NumberFormatException if the quantity is out of range for the direction,
+     *         with a message for the player
+     */
+    public CarInstruction sendInstruction(String userid, CarDirection direction, long quantity) throws NumberFormatException;
+
+    /**
+     * @return the number of 50ms pulses still to be sent
+     */
+    public long getPendingPulses();
+
+    /**
+     * Forget a player who has left the room.
+     *
+     * @param userid the player
+     */
+    public void release(String userid);
 
 }
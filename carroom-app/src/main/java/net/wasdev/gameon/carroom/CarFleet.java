@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * The cars driven from this room, and which player drives which car.
+ *
+ * Every car has its own {@link CarDriver}, so adding cars adds driving capacity.
+ * Players are given a car by the {@link DispatchPolicy}, unless they have picked
+ * one themselves. Cars are numbered from 1 in the order they were given.
+ */
+public class CarFleet {
+
+    /**
+     * How a player who has not picked a car is given one.
+     */
+    public enum DispatchPolicy {
+        /**
+         * The first command picks the connected car with the least queued, and the
+         * player keeps it until it drops, when they are moved to another.
+         */
+        LEAST_LOADED,
+        /**
+         * The first command picks the connected car with the least queued, and the
+         * player keeps it until they leave, waiting for it if it drops.
+         */
+        STICKY;
+    }
+
+    private final List<CarDriver> cars;
+    private final DispatchPolicy policy;
+    // cars players have picked with /car, and cars given out by the policy
+    private final Map<String, CarDriver> chosen = new ConcurrentHashMap<>();
+    private final Map<String, CarDriver> assigned = new ConcurrentHashMap<>();
+
+    /**
+     * @param cars
+     *            the driver for each car
+     * @param policy
+     *            how players are given a car
+     */
+    public CarFleet(List<CarDriver> cars, DispatchPolicy policy) {
+        if (cars.isEmpty()) {
+            throw new IllegalArgumentException("A fleet needs at least one car");
+        }
+        this.cars = Collections.unmodifiableList(new ArrayList<>(cars));
+        this.policy = policy;
+    }
+
+    public void start() {
+        for (CarDriver car : cars) {
+            car.start();
+        }
+        Log.log(Level.INFO, this, "Started " + cars.size() + " car(s) using " + policy);
+    }
+
+    public void stop() {
+        for (CarDriver car : cars) {
+            car.stop();
+        }
+    }
+
+    public List<CarDriver> getCars() {
+        return cars;
+    }
+
+    public int size() {
+        return cars.size();
+    }
+
+    public DispatchPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the car's number, starting from 1
+     */
+    public int numberOf(CarDriver car) {
+        return cars.indexOf(car) + 1;
+    }
+
+    /**
+     * Pick a car for a player to drive.
+     *
+     * @param number
+     *            the car's number, starting from 1
+     * @return false if there is no such car
+     */
+    public boolean choose(String userid, int number) {
+        if (number < 1 || number > cars.size()) {
+            return false;
+        }
+        chosen.put(userid, cars.get(number - 1));
+        assigned.remove(userid);
+        return true;
+    }
+
+    /**
+     * Forget a player who has left the room.
+     */
+    public void release(String userid) {
+        chosen.remove(userid);
+        assigned.remove(userid);
+        for (CarDriver car : cars) {
+            car.release(userid);
+        }
+    }
+
+    /**
+     * Find the car a player is driving, giving them one if they have none. The same
+     * car is returned for every command until the policy moves the player.
+     */
+    public CarDriver select(String userid) {
+        CarDriver car = chosen.get(userid);
+        if (car != null) {
+            return car;
+        }
+        car = assigned.get(userid);
+        if (car != null && (car.isReady() || policy == DispatchPolicy.STICKY)) {
+            return car;
+        }
+        // a new player, or one whose car has gone away
+        CarDriver replacement = leastLoaded();
+        if (car == null ? assigned.putIfAbsent(userid, replacement) == null : assigned.replace(userid, car, replacement)) {
+            return replacement;
+        }
+        // another command from the same player got there first
+        CarDriver other = assigned.get(userid);
+        return other == null ? replacement : other;
+    }
+
+    // the connected car with the least queued, or the first car if none are connected
+    private CarDriver leastLoaded() {
+        CarDriver best = null;
+        long bestLoad = Long.MAX_VALUE;
+        for (CarDriver car : cars) {
+            if (car.isReady()) {
+                long load = car.getPendingPulses();
+                if (load < bestLoad) {
+                    best = car;
+                    bestLoad = load;
+                }
+            }
+        }
+        return best == null ? cars.get(0) : best;
+    }
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An instruction encoded for the wire, ready to be sent once per pulse. A frame
+ * is either text or binary, see {@link CarFrameCodec}.
+ */
+public final class CarFrame {
+    private final CarInstruction instruction;
+    private final String text;
+    private final ByteBuffer binary;
+
+    private CarFrame(CarInstruction instruction, String text, ByteBuffer binary) {
+        this.instruction = instruction;
+        this.text = text;
+        this.binary = binary;
+    }
+
+    public static CarFrame text(CarInstruction instruction, String text) {
+        return new CarFrame(instruction, text, null);
+    }
+
+    public static CarFrame binary(CarInstruction instruction, byte[] bytes) {
+        return new CarFrame(instruction, null, ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+    }
+
+    public CarInstruction getInstruction() {
+        return instruction;
+    }
+
+    public boolean isBinary() {
+        return binary != null;
+    }
+
+    /**
+     * @return the text to send, or null for a binary frame
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return a buffer positioned at the start of the frame, or null for a text
+     *         frame. Each call returns a new buffer, so sending one does not
+     *         use up the frame.
+     */
+    public ByteBuffer getBinary() {
+        return binary == null ? null : binary.duplicate();
+    }
+
+    @Override
+    public String toString() {
+        return binary == null ? text : "binary frame of " + binary.capacity() + " bytes for " + instruction;
+    }
+}
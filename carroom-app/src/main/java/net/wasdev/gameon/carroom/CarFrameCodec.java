@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+/**
+ * Turns an instruction into the frame sent to the car. Each instruction is
+ * encoded once when it is queued, then the same frame is sent for every pulse.
+ */
+public interface CarFrameCodec {
+
+    /**
+     * The text format every car understands, e.g.
+     * <code>{'id':'user', 'msggrp':'15a3e1c2d0000001','throttle':20}</code>
+     */
+    CarFrameCodec JSON = instruction -> CarFrame.text(instruction, instruction.toJSON());
+
+    CarFrame encode(CarInstruction instruction);
+
+    /**
+     * @param name
+     *            json or binary, as set by the carFrameFormat JNDI entry
+     * @return the codec, or {@link #JSON} if the name is not recognised
+     */
+    static CarFrameCodec forName(String name) {
+        if ("binary".equalsIgnoreCase(name)) {
+            return new BinaryCarFrameCodec();
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single instruction for the car from a player.
+ */
+public class CarInstruction {
+    // message groups only need to be unique, so a counter is enough. Starting it
+    // from the clock keeps them unique across restarts too
+    private static final AtomicLong groups = new AtomicLong(System.currentTimeMillis() << 20);
+
+    private final long group = groups.incrementAndGet();
+    private final String id = Long.toHexString(group);
+    private final CarDirection direction;
+    private final String userid;
+    private final long value;
+    // the same instruction is sent once per pulse, so it is only encoded once
+    private String json;
+    
+    /**
+     * @throws NumberFormatException if the value is out of range for the direction,
+     *         with a message for the player
+     */
+    public CarInstruction(String userid, CarDirection direction, long value) throws NumberFormatException {
+        direction.validate(value);
+        this.direction = direction;
+        this.userid = userid;
+        this.value = value;
+    }
+    
+    public String toJSON() {
+        String encoded = json;
+        if (encoded == null) {
+            encoded = "{'id':'" + userid + "', 'msggrp':'" + id + "'," + direction.toJSON(value) + "}";
+            json = encoded;
+        }
+        return encoded;
+    }
+
+    /**
+     * @return how many 50ms pulses this instruction is sent for
+     */
+    public int getPulses() {
+        return direction.pulses(value);
+    }
+    
+    @Override
+    public String toString() {
+        return toJSON();
+    }
+    
+    public String getID() {
+        return id;
+    }
+
+    /**
+     * @return the message group as a number, {@link #getID()} is the same in hex
+     */
+    public long getGroup() {
+        return group;
+    }
+
+    public String getUserid() {
+        return userid;
+    }
+
+    public CarDirection getDirection() {
+        return direction;
+    }
+
+    public long getValue() {
+        return value;
+    }
+}
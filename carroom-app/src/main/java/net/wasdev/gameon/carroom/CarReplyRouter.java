@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+
+/**
+ * Finds the player a reply from the car is for.
+ *
+ * Every instruction sent to a car is remembered by its message group, so a
+ * reply carrying a msggrp goes straight to the player who sent it. A reply
+ * without one is routed on the user id the car puts at the end. Either way the
+ * player is then looked up in the {@link PlayerRegistry}, so a reply for a
+ * player who has left is dropped without any more work.
+ */
+public class CarReplyRouter {
+    private final PlayerRegistry players;
+    // message group to user id, forgetting the oldest once full
+    private final Map<String, String> groups;
+
+    private final AtomicLong byGroup = new AtomicLong();
+    private final AtomicLong byUser = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param players
+     *            who is in the room
+     * @param capacity
+     *            how many message groups to remember
+     */
+    public CarReplyRouter(PlayerRegistry players, int capacity) {
+        this.players = players;
+        this.groups = new LinkedHashMap<String, String>(Math.min(capacity, 1024), 0.75f, false) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * An instruction has been queued for a car, so replies to it can be routed.
+     */
+    public void sent(CarInstruction instruction) {
+        synchronized (groups) {
+            groups.put(instruction.getID(), instruction.getUserid());
+        }
+    }
+
+    /**
+     * @param reply
+     *            a message from the car
+     * @return the player it is for, or null if they are no longer in the room
+     */
+    public PlayerRegistry.Player route(String reply) {
+        String group = InFlightTable.groupOf(reply);
+        String userid = null;
+        if (group != null) {
+            synchronized (groups) {
+                userid = groups.get(group);
+            }
+        }
+        AtomicLong routed = byGroup;
+        if (userid == null) {
+            routed = byUser;
+            int pos = reply.lastIndexOf(' ');
+            userid = pos == -1 ? null : reply.substring(pos + 1);
+        }
+        PlayerRegistry.Player player = userid == null ? null : players.getPlayer(userid);
+        (player == null ? dropped : routed).incrementAndGet();
+        return player;
+    }
+
+    /**
+     * Publish how replies have been routed.
+     *
+     * @param prefix
+     *            put in front of every metric name, e.g. "carReplies"
+     */
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + ".routedByGroup", byGroup::get);
+        registry.gauge(prefix + ".routedByUser", byUser::get);
+        registry.gauge(prefix + ".dropped", dropped::get);
+    }
+}
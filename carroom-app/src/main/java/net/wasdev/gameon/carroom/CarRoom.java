@@ -15,86 +15,39 @@
  *******************************************************************************/
 package net.wasdev.gameon.carroom;
 
-import java.io.BufferedReader;
 import java.io.Closeable;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.StringReader;
-import java.net.HttpURLConnection;
-import java.net.InetAddress;
 import java.net.URI;
-import java.net.URL;
-import java.net.UnknownHostException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.time.Instant;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
-
-import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
-import javax.json.JsonString;
-import javax.json.JsonValue;
-import javax.json.JsonValue.ValueType;
+
 import javax.naming.InitialContext;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.servlet.ServletContextEvent;
-import javax.servlet.ServletContextListener;
-import javax.servlet.annotation.WebListener;
 import javax.websocket.CloseReason;
-import javax.websocket.CloseReason.CloseCodes;
-import javax.websocket.ContainerProvider;
-import javax.websocket.Endpoint;
 import javax.websocket.EndpointConfig;
-import javax.websocket.MessageHandler;
 import javax.websocket.OnClose;
 import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
-import javax.websocket.RemoteEndpoint.Basic;
 import javax.websocket.Session;
-import javax.websocket.WebSocketContainer;
 import javax.websocket.server.ServerEndpoint;
 
-import org.apache.http.Header;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.mime.FormBodyPartBuilder;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.entity.mime.content.FileBody;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
-
+import net.wasdev.gameon.carroom.CarFleet.DispatchPolicy;
+import net.wasdev.gameon.journal.Journal;
+import net.wasdev.gameon.metrics.MetricsRegistry;
 import net.wasdev.gameon.protocol.EventBuilder;
-import net.wasdev.gameon.security.SecurityUtils;
-import net.wasdev.gameon.security.TheNotVerySensibleHostnameVerifier;
-import net.wasdev.gameon.security.TheVeryTrustingTrustManager;
+import net.wasdev.gameon.protocol.EventFrame;
+import net.wasdev.gameon.protocol.LocationFrameCache;
+import net.wasdev.gameon.protocol.ReplayBuffer;
+import net.wasdev.gameon.protocol.RoomMessage;
+import net.wasdev.gameon.protocol.RoomMessageDecoder;
+import net.wasdev.gameon.protocol.SessionFanout;
+import net.wasdev.gameon.protocol.SessionFanout.OverflowPolicy;
 
 /**
  * A very simple room.
@@ -110,37 +63,48 @@ import net.wasdev.gameon.security.TheVeryTrustingTrustManager;
 public class CarRoom {
 
     private final static String USERNAME = "username";
-    private final static String USERID = "userId";
-    private final static String BOOKMARK = "bookmark";
-    private final static String CONTENT = "content";
-    private final static String TYPE = "type";
-    private final static String EXIT = "exit";
-    private final static String EXIT_ID = "exitId";
-
-    private Set<String> playersInRoom = Collections.synchronizedSet(new HashSet<String>());
 
     private static final String name = "CarRoom";
     private static final String fullName = "A room with a remote control car";
     private static final String description = "There is simple wooden table in the centre of the room, there is the smell of burning rubber in the air.\n\n"
-            + "Commands are : \n/left <lock 0 - 100>\n/right <lock 0 - 100>\n/forwards <seconds 0 - 10>\n/backwards <seconds 0 - 10>\n";
+            + "Commands are : \n/left <lock 0 - 100>\n/right <lock 0 - 100>\n/forwards <seconds 0 - 10>\n/backwards <seconds 0 - 10>\n/car <car number to drive>\n/view <width 20 - 200>\n";
     
     List<String> directions = Arrays.asList( "n", "s", "e", "w", "u", "d");
 
-    private static long bookmark = 0;
-
-    private final Set<Session> sessions = new CopyOnWriteArraySet<Session>();
     private final Map<String, String> exits = new HashMap<>();
     private final List<String> objects = new ArrayList<>();
+    private final CommandDispatcher commands = new CommandDispatcher();
+    // call invalidate() on this whenever the exits or objects change
+    private final LocationFrameCache location = new LocationFrameCache(name, fullName, description,
+            exits, objects, Collections.emptyList(), Collections.emptyMap());
     
-    // config values retrieved from JNDI
-    // have a look in server.xml to find how these are set
-    private final String carEndPoint;
+    // outbound messages are queued per session and written asynchronously, see server.xml
+    // for the queue size and what happens when a slow player fills their queue
+    private static final SessionFanout fanout = new SessionFanout(
+            getIntJNDIEntry("fanoutQueueSize", 64),
+            getPolicyJNDIEntry("fanoutOverflowPolicy", OverflowPolicy.DROP_OLDEST));
+
+    // everyone in the room, whichever connection they came in on
+    private static final PlayerRegistry players = new PlayerRegistry();
+    // which player each car reply is for
+    private static final CarReplyRouter carReplies = new CarReplyRouter(players, 4096);
+
+    static {
+        Log.configure(getJNDIEntry("logSampling"), getJNDIEntry("logRateLimit"));
+        EventBuilder.setFanout(fanout);
+        EventBuilder.setReplayBuffer(new ReplayBuffer(getIntJNDIEntry("replayBufferSize", 1024)));
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        fanout.registerMetrics(metrics, "fanout");
+        Log.registerMetrics(metrics, "log");
+        metrics.gauge("room.connections", players::getConnectionCount);
+        metrics.gauge("room.sessions", players::getSessionCount);
+        metrics.gauge("room.players", players::getPlayerCount);
+        carReplies.registerMetrics(metrics, "carReplies");
+        EventBuilder.getReplayBuffer().registerMetrics(metrics, "replay");
+    }
 
     public CarRoom() {
         
-        carEndPoint = "ws://" + getJNDIEntry("carEndPoint");
-        System.out.println("Car endpoint " + carEndPoint);
-        
         exits.put("n", "A Large doorway to the north");
         exits.put("s", "A winding path leading off to the south");
         exits.put("e", "An overgrown road, covered in brambles");
@@ -148,9 +112,11 @@ public class CarRoom {
         exits.put("u", "A spiral set of stairs, leading upward into the ceiling");
         exits.put("d", "A tunnel, leading down into the earth");
         objects.add("Remote control car");
+        location.invalidate();
+        registerCommands();
     }
     
-    private String getJNDIEntry(String name) {
+    private static String getJNDIEntry(String name) {
         try {
             return (String) new InitialContext().lookup(name);
         } catch (Exception e) {
@@ -158,50 +124,77 @@ public class CarRoom {
         }
         return null;
     }
+
+    private static int getIntJNDIEntry(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(String.valueOf(new InitialContext().lookup(name)));
+        } catch (Exception e) {
+            System.out.println("Using default of " + defaultValue + " for " + name);
+        }
+        return defaultValue;
+    }
+
+    private static OverflowPolicy getPolicyJNDIEntry(String name, OverflowPolicy defaultValue) {
+        try {
+            return OverflowPolicy.valueOf(String.valueOf(new InitialContext().lookup(name)).toUpperCase());
+        } catch (Exception e) {
+            System.out.println("Using default of " + defaultValue + " for " + name);
+        }
+        return defaultValue;
+    }
     
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // Websocket methods..
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-    private Session userSession;
-    
     @OnOpen
     public void onOpen(Session session, EndpointConfig ec) {
-        System.out.println("A new connection has been made to the room.");
-        userSession = session;
+        Log.log(Log.Category.CONNECTION, Level.INFO, session, "A new connection has been made to the room.");
+        players.opened(session);
         //send ack
         sendRemoteTextMessage(session, "ack,{\"version\":[1]}");
     }
 
     @OnClose
     public void onClose(Session session, CloseReason r) {
-        System.out.println("A connection to the room has been closed");
+        connectionGone(session);
+        Log.log(Log.Category.CONNECTION, Level.INFO, session, "A connection to the room has been closed");
     }
 
     @OnError
     public void onError(Session session, Throwable t) {
         if(session!=null){
-            sessions.remove(session);
+            connectionGone(session);
         }
         System.out.println("Websocket connection has broken");
         t.printStackTrace();
     }
 
+    // players on a connection that has gone have left without saying goodbye
+    private void connectionGone(Session session) {
+        CarFleet cars = fleet;
+        for (PlayerRegistry.Player player : players.closed(session)) {
+            if (cars != null) {
+                cars.release(player.getUserId());
+            }
+        }
+    }
+
     @OnMessage
     public void receiveMessage(String message, Session session) throws IOException {
-        String[] contents = splitRouting(message);
+        RoomMessage msg = RoomMessageDecoder.decode(message);
 
-        // Who doesn't love switch on strings in Java 8?
-        switch(contents[0]) {
-            case "roomHello":
-                sessions.add(session);
-                addNewPlayer(session, contents[2]);
+        switch(msg.getType()) {
+            case HELLO:
+                addNewPlayer(session, msg);
                 break;
-            case "room":
-                processCommand(session, contents[2]);
+            case ROOM:
+                processCommand(session, msg);
                 break;
-            case "roomGoodbye":
-                removePlayer(session, contents[2]);
+            case GOODBYE:
+                removePlayer(session, msg);
+                break;
+            default:
                 break;
         }
     }
@@ -211,133 +204,175 @@ public class CarRoom {
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     // add a new player to the room
-    private void addNewPlayer(Session session, String json) throws IOException {
+    private void addNewPlayer(Session session, RoomMessage msg) throws IOException {
         if (session.getUserProperties().get(USERNAME) != null) {
             return; // already seen this user before on this socket
         }
-        JsonObject msg = Json.createReader(new StringReader(json)).readObject();
-        String username = getValue(msg.get(USERNAME));
-        String userid = getValue(msg.get(USERID));
+        String username = msg.getUsername();
+        String userid = msg.getUserId();
+        catchUp(session, userid, msg.getBookmark());
 
-        if (playersInRoom.add(userid)) {
+        if (players.join(session, userid, username)) {
             // broadcast that the user has entered the room
-            EventBuilder.playerEvent(Collections.singletonList(session),
-                    userid, "You have entered the room", "Player " + username + " has entered the room");
+            broadcast(EventBuilder.playerFrame(userid, "You have entered the room", "Player " + username + " has entered the room"));
            
-            EventBuilder.locationEvent(Collections.singletonList(session),
-                    userid, name, fullName, description, exits, objects, Collections.emptyList(), Collections.emptyMap());
+            location.frameFor(userid).sendTo(fanout, session);
+        }
+    }
+
+    // send a reconnecting player whatever they missed since their last bookmark
+    private void catchUp(Session session, String userid, String bookmark) {
+        if (bookmark == null || userid == null) {
+            return;
+        }
+        List<EventFrame> missed;
+        try {
+            missed = EventBuilder.getReplayBuffer().since(Long.parseLong(bookmark), userid);
+        } catch (NumberFormatException e) {
+            return; // not one of ours
+        }
+        if (missed == null) {
+            System.out.println("Unable to replay events since " + bookmark + " for " + userid + ", too long ago");
+            return;
+        }
+        for (EventFrame frame : missed) {
+            frame.sendTo(fanout, session);
         }
     }
 
     // remove a player from the room.
-    private void removePlayer(Session session, String json) throws IOException {
-        sessions.remove(session);
-        JsonObject msg = Json.createReader(new StringReader(json)).readObject();
-        String username = getValue(msg.get(USERNAME));
-        String userid = getValue(msg.get(USERID));
-        playersInRoom.remove(userid);
+    private void removePlayer(Session session, RoomMessage msg) throws IOException {
+        String username = msg.getUsername();
+        String userid = msg.getUserId();
+        players.leave(userid);
+        CarFleet cars = fleet;
+        if (cars != null) {
+            cars.release(userid);
+        }
 
         // broadcast that the user has left the room
         sendMessageToRoom(session, "Player " + username + " has left the room", null, userid);
     }
 
     // process a command
-    private void processCommand(Session session, String json) throws IOException {
-        JsonObject msg = Json.createReader(new StringReader(json)).readObject();
-        String userid = getValue(msg.get(USERID));
-        String username = getValue(msg.get(USERNAME));
-        String content = getValue(msg.get(CONTENT)).toString();
-        String lowerContent = content.toLowerCase();
+    private void processCommand(Session session, RoomMessage msg) throws IOException {
+        String content = msg.getContent();
+        if (content == null) {
+            return; // nothing to do
+        }
 
-        System.out.println("Command received from the user, " + content);
+        Log.log(Log.Category.COMMAND, Level.INFO, session, "Command received from the user, {0}", content);
+        Journal.record(Journal.Type.COMMAND, msg.getUserId(), content);
 
-        // handle look command
-        if (lowerContent.equals("/look")) {
-            // resend the room description when we receive /look
-            EventBuilder.locationEvent(Collections.singletonList(session),
-                    userid, name, fullName, description, exits, objects, Collections.emptyList(), Collections.emptyMap());
+        if (commands.dispatch(session, msg)) {
             return;
         }
-        
-        for(CarDirection direction : CarDirection.values()) {
-            String match = "/" + direction.name().toLowerCase() + " ";
-            if(lowerContent.startsWith(match)) {
-                //this is a command to drive the car
-                try {
-                    Long value = Long.parseLong(lowerContent.substring(match.length()));
-                    if((value < 0) | (value > 100)) {
-                        sendMessageToRoom(session, null, "ERROR : The car commands require an integer between 0 and 100", userid);
-                    } else {
-                        try {
-                            sendToCar(userid, direction, value);
-                        } catch (NumberFormatException e) {
-                            //this is an exception generated by the room with a meaningful message
-                            sendMessageToRoom(session, null, e.getMessage(), userid);
-                        }
-                    }
-                } catch (NumberFormatException e) {
-                    sendMessageToRoom(session, null, "ERROR : The car commands require an integer as the second parameter", userid);
-                }
+
+        // reject all unknown commands
+        if (content.startsWith("/")) {
+            sendMessageToRoom(session, null, "Unrecognised command - sorry :-(", msg.getUserId());
+            return;
+        }
+
+        // everything else is just chat.
+        broadcast(EventBuilder.chatFrame(msg.getUsername(), content));
+        return;
+    }
+
+    // register the commands this room understands
+    private void registerCommands() {
+        commands.register("/look", (session, msg, argStart) -> {
+            if (argStart != -1) {
+                unrecognised(session, msg);
                 return;
             }
+            // resend the room description when we receive /look
+            location.frameFor(msg.getUserId()).sendTo(fanout, session);
+        });
+        for (CarDirection direction : CarDirection.values()) {
+            commands.register("/" + direction.name().toLowerCase(), (session, msg, argStart) -> {
+                if (argStart == -1) {
+                    unrecognised(session, msg);
+                    return;
+                }
+                drive(session, msg.getUserId(), direction, msg.getContent().substring(argStart));
+            });
         }
-        
-        if (lowerContent.startsWith("/go")) {
+        commands.register("/car", (session, msg, argStart) -> {
+            chooseCar(session, msg.getUserId(), argStart == -1 ? null : msg.getContent().substring(argStart));
+        });
+        commands.register("/go", (session, msg, argStart) -> {
             String exitDirection = null;
-            if (lowerContent.length() > 4) {
-                exitDirection = lowerContent.substring(4).toLowerCase();
+            if (argStart != -1) {
+                exitDirection = msg.getContent().substring(argStart).toLowerCase();
             }
+            goDirection(session, msg.getUserId(), exitDirection);
+        });
+        commands.register("/view", (session, msg, argStart) -> {
+            view(session, msg.getUserId(), argStart == -1 ? null : msg.getContent().substring(argStart));
+        });
+    }
+
+    private void unrecognised(Session session, RoomMessage msg) throws IOException {
+        sendMessageToRoom(session, null, "Unrecognised command - sorry :-(", msg.getUserId());
+    }
 
-            if ( exitDirection == null || !directions.contains(exitDirection) ) {
-                sendMessageToRoom(session, null, "Hmm. That direction didn't make sense. Try again?", userid);
+    //this is a command to drive the car
+    private void drive(Session session, String userid, CarDirection direction, String argument) throws IOException {
+        try {
+            Long value = Long.parseLong(argument);
+            if((value < 0) | (value > 100)) {
+                sendMessageToRoom(session, null, "ERROR : The car commands require an integer between 0 and 100", userid);
             } else {
-                // Trying to go somewhere, eh?
-                JsonObjectBuilder response = Json.createObjectBuilder();
-                response.add(TYPE, EXIT)
-                .add(EXIT_ID, exitDirection)
-                .add(BOOKMARK, bookmark++)
-                .add(CONTENT, "Run Away!");
-
-                sendRemoteTextMessage(session, "playerLocation," + userid + "," + response.build().toString());
+                try {
+                    sendToCar(session, userid, direction, value);
+                } catch (NumberFormatException e) {
+                    //this is an exception generated by the room with a meaningful message
+                    sendMessageToRoom(session, null, e.getMessage(), userid);
+                }
             }
-            return;
+        } catch (NumberFormatException e) {
+            sendMessageToRoom(session, null, "ERROR : The car commands require an integer as the second parameter", userid);
         }
+    }
 
-        // reject all unknown commands
-        if (lowerContent.startsWith("/")) {
-            sendMessageToRoom(session, null, "Unrecognised command - sorry :-(", userid);
-            return;
+    private void goDirection(Session session, String userid, String exitDirection) throws IOException {
+        if ( exitDirection == null || !directions.contains(exitDirection) ) {
+            sendMessageToRoom(session, null, "Hmm. That direction didn't make sense. Try again?", userid);
+        } else {
+            // Trying to go somewhere, eh?
+            EventBuilder.exitFrame(userid, "Run Away!", exitDirection).sendTo(fanout, session);
         }
+    }
 
-        // everything else is just chat.
-        EventBuilder.chatEvent(session, username, content);
-        return;
+    // show the player the latest picture from the car
+    private void view(Session session, String userid, String argument) throws IOException {
+        String art;
+        try {
+            int columns = argument == null ? CarCamera.DEFAULT_COLUMNS : Integer.parseInt(argument.trim());
+            art = CarCamera.getDefault().view(columns);
+        } catch (IllegalArgumentException e) {
+            sendMessageToRoom(session, null, "ERROR : The width must be an integer between " + CarCamera.MIN_COLUMNS
+                    + " and " + CarCamera.MAX_COLUMNS, userid);
+            return;
+        }
+        if (art == null) {
+            sendMessageToRoom(session, null, "The car hasn't sent a picture yet", userid);
+            return;
+        }
+        sendMessageToRoom(session, null, art, userid);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // Reply methods..
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-    private void sendMessageToRoom(Session session, String messageForRoom, String messageForUser, String userid)
-            throws IOException {
-        JsonObjectBuilder response = Json.createObjectBuilder();
-        response.add(TYPE, "event");
-
-        JsonObjectBuilder content = Json.createObjectBuilder();
-        if (messageForRoom != null) {
-            content.add("*", messageForRoom);
-        }
-        if (messageForUser != null) {
-            content.add(userid, messageForUser);
-        }
-
-        response.add(CONTENT, content.build());
-        response.add(BOOKMARK, bookmark++);
-
+    private static void sendMessageToRoom(Session session, String messageForRoom, String messageForUser, String userid) {
+        EventFrame frame = EventBuilder.playerFrame(userid, messageForUser, messageForRoom);
         if(messageForRoom==null){
-            sendRemoteTextMessage(session, "player," + userid + "," + response.build().toString());
+            frame.sendTo(fanout, session);
         }else{
-            broadcast(sessions, "player,*," + response.build().toString());
+            broadcast(frame);
         }
     }
 
@@ -345,69 +380,31 @@ public class CarRoom {
     // Util fns.
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-    private String[] splitRouting(String message) {
-        ArrayList<String> list = new ArrayList<>();
-
-        int brace = message.indexOf('{');
-        int i = 0;
-        int j = message.indexOf(',');
-        while (j > 0 && j < brace) {
-            list.add(message.substring(i, j));
-            i = j + 1;
-            j = message.indexOf(',', i);
-        }
-        list.add(message.substring(i));
-
-        return list.toArray(new String[] {});
-    }
-
-    private static String getValue(JsonValue value) {
-        if (value.getValueType().equals(ValueType.STRING)) {
-            JsonString s = (JsonString) value;
-            return s.getString();
-        } else {
-            return value.toString();
-        }
-    }
-
     /**
-     * Simple text based broadcast.
+     * Send an event to every session carrying players in the room. The frame is
+     * queued for each session and written asynchronously, so a slow session does
+     * not hold up the others.
      *
-     * @param session
-     *            Target session (used to find all related sessions)
-     * @param message
-     *            Message to send
-     * @see #sendRemoteTextMessage(Session, RoutedMessage)
+     * @param frame
+     *            the event to send
+     * @see #sendRemoteTextMessage(Session, String)
      */
-    public void broadcast(Set<Session> sessions, String message) {
-        for (Session s : sessions) {
-            sendRemoteTextMessage(s, message);
-        }
+    private static void broadcast(EventFrame frame) {
+        frame.sendTo(fanout, players.getSessions());
     }
 
     /**
-     * Try sending the {@link RoutedMessage} using
-     * {@link Session#getBasicRemote()}, {@link Basic#sendObject(Object)}.
+     * Queue the message for sending using {@link Session#getAsyncRemote()}.
+     * Failed writes close the session, see {@link SessionFanout}.
      *
      * @param session
      *            Session to send the message on
      * @param message
      *            Message to send
-     * @return true if send was successful, or false if it failed
+     * @return true if the message was queued, or false if the session is closed
      */
     public boolean sendRemoteTextMessage(Session session, String message) {
-        if (session.isOpen()) {
-            try {
-                session.getBasicRemote().sendText(message);
-                return true;
-            } catch (IOException ioe) {
-                // An IOException, on the other hand, suggests the connection is
-                // in a bad state.
-                System.out.println("Unexpected condition writing message: " + ioe);
-                tryToClose(session, new CloseReason(CloseCodes.UNEXPECTED_CONDITION, trimReason(ioe.toString())));
-            }
-        }
-        return false;
+        return fanout.send(session, message);
     }
 
     /**
@@ -457,177 +454,119 @@ public class CarRoom {
     // Car control methods
     //****************************************************************
     
-    private enum CarDirection {   
-        LEFT, RIGHT, FORWARDS, BACKWARDS;
-    }
-    
-    private class CarInstruction {
-        private final String id = UUID.randomUUID().toString();
-        private final CarDirection direction;
-        private final String userid;
-        private final Long value;
-        
-        CarInstruction(String userid, CarDirection direction, Long value) throws NumberFormatException {
-            this.direction = direction;
-            this.userid = userid;
-            this.value = value;
-            //validate that the value is OK for the direction specified
-            switch(direction) {
-                case LEFT :
-                case RIGHT :
-                    if((value < 0) || (value > 100)) {
-                        throw new NumberFormatException("ERROR : The left and right commands have an integer value between 0 and 100 (inclusive)");
-                    }
+    // the cars, shared by every connection to the room. They are started and
+    // stopped with the application, see CarControllerListener
+    private static volatile CarFleet fleet = null;
+
+    static synchronized void startCar() {
+        if (fleet != null) {
+            return;
+        }
+        // carDriver picks how we talk to the cars: websocket (the default), or
+        // recording / noop to run the room without a car
+        String driver = "websocket";
+        try {
+            driver = String.valueOf(new InitialContext().lookup("carDriver")).toLowerCase();
+        } catch (Exception e) {
+            System.out.println("Using default of " + driver + " for carDriver");
+        }
+
+        // carFrameFormat is json (the default), or binary for cars that accept it
+        CarFrameCodec codec = CarFrameCodec.forName(getJNDIEntry("carFrameFormat"));
+
+        // carEndPoint can list several cars, separated by commas
+        List<CarDriver> cars = new ArrayList<>();
+        String carEndPoints = getJNDIEntry("carEndPoint");
+        for (String endpoint : String.valueOf(carEndPoints).split(",")) {
+            String carEndPoint = "ws://" + endpoint.trim();
+            String carName = "car-" + (cars.size() + 1);
+            switch (driver) {
+                case "noop":
+                    cars.add(new NoOpCarDriver());
+                    break;
+                case "recording":
+                    cars.add(new RecordingCarDriver(carName, 1000));
                     break;
-                case FORWARDS :
-                case BACKWARDS :
-                    if((value < 0) || (value > 10)) {
-                        throw new NumberFormatException("ERROR : The forwards and backwards commands have an integer value between 0 and 10 (inclusive)");
+                default:
+                    System.out.println("Car endpoint " + carEndPoint);
+                    try {
+                        cars.add(new WebSocketCarDriver(carName, new URI(carEndPoint), codec, CarRoom::carMessage));
+                    } catch (URISyntaxException e) {
+                        Log.log(Level.WARNING, players, "Invalid car endpoint " + carEndPoint, e);
                     }
                     break;
             }
         }
-        
-        String toJSON() {
-            String prefix = "{'id':'" + userid + "', 'msggrp':'" + id + "',";
-            String suffix = "}";
-            switch(direction) {
-                case LEFT :
-                    return prefix + "'turning':-" + value  + suffix;
-                case RIGHT :
-                    return prefix + "'turning':" + value  + suffix;
-                case FORWARDS :
-                    return prefix + "'throttle':20" + suffix;
-                case BACKWARDS :
-                    return prefix + "'throttle':-70" + suffix;
-                default :
-                    return prefix + "'throttle':0,'turning':0"+ suffix;
-            }
-       }
-        
-        @Override
-        public String toString() {
-            return toJSON();
-        }
-        
-        public String getID() {
-            return id;
-        }
-                
-    }
-    
-    private volatile boolean carAvailable = false;
-    private Session carSession = null;      //web socket connection with the car
-    private final ScheduledExecutorService carController = Executors.newScheduledThreadPool(1);
-    private BlockingQueue<CarInstruction> instructions = new LinkedBlockingQueue<>();
-        
-    private synchronized void sendToCar(String userid, CarDirection direction, Long value) {
-        final CarInstruction instruction = new CarInstruction(userid, direction, value);
-        if(!isCarAvailable()) {
+        if (cars.isEmpty()) {
             return;
         }
-        Log.log(Level.INFO, carController, "Sending instruction to car", instruction);
-        System.out.println("Queueing instruction to car : " + instruction);
-            
-        int msgCount = 1;
-        if(direction.equals(CarDirection.FORWARDS) || direction.equals(CarDirection.BACKWARDS)) {
-            msgCount = (int)(value * 20);      //convert seconds to a 50ms pulse
+        DispatchPolicy policy = DispatchPolicy.LEAST_LOADED;
+        try {
+            policy = DispatchPolicy.valueOf(String.valueOf(new InitialContext().lookup("carDispatchPolicy")).toUpperCase());
+        } catch (Exception e) {
+            System.out.println("Using default of " + policy + " for carDispatchPolicy");
         }
-        
-        for(;msgCount > 0; msgCount --) {
-            try {
-                instructions.put(instruction);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        fleet = new CarFleet(cars, policy);
+        fleet.start();
+        System.out.println("Car controller configured");
+    }
+
+    static synchronized void stopCar() {
+        if (fleet != null) {
+            fleet.stop();
         }
+        System.out.println("Stopped car controller");
     }
-    
-    private boolean isCarAvailable() {
-        Log.log(Level.INFO, carController, "Checking connection with car");
-        if(!carAvailable) {
-            try {
-                connectToCar();
-                carAvailable = true;
-                System.out.println("Car connected OK");
-                carController.scheduleAtFixedRate(new Runnable(){
-                    @Override
-                    public void run() {
-                        if(!instructions.isEmpty()) {
-                            try {
-                                if(isCarAvailable()) {
-                                    CarInstruction instruction = instructions.take();
-                                    System.out.println("Sending instruction to car : " + instruction);
-                                    carSession.getBasicRemote().sendText(instruction.toJSON());
-                                } else {
-                                    System.out.println("Car not available, rescheduling command");
-                                    carController.scheduleWithFixedDelay(this,1000, 50, TimeUnit.SECONDS);
-                                }
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    }
-                    
-                }, 0, 50, TimeUnit.MILLISECONDS);
-                System.out.println("Car controller configured");
-            } catch (Exception e) {
-                Log.log(Level.WARNING, carController, "Unable to connect to car", e);
-                e.printStackTrace();   
-            }
+
+    // route a message from the car back to the player it is for
+    private static void carMessage(String message) {
+        Log.log(Log.Category.CAR, Level.INFO, players, "Message received from car : {0}", message);
+        PlayerRegistry.Player player = carReplies.route(message);
+        if (player != null) {
+            sendMessageToRoom(player.getSession(), null, message, player.getUserId());
         }
-        return carAvailable;
     }
-    
-    //connect to the car web socket
-    private void connectToCar() throws Exception {
-        Log.log(Level.INFO, carController, "Connecting to car at : " + carEndPoint);
-        System.out.println("Connecting to car");
-        WebSocketContainer c = ContainerProvider.getWebSocketContainer();
-        carSession = c.connectToServer(new Endpoint() {
-
-            @Override
-            public void onOpen(Session session, EndpointConfig config) {
-                Log.log(Level.INFO, carController, "Connected to car at : " + carEndPoint);
-                System.out.println("Connected to car : " + carEndPoint);
-                session.addMessageHandler(new MessageHandler.Whole<String>() {
-
-                    @Override
-                    public void onMessage(String message) {
-                        Log.log(Level.INFO, carController, "Message received from car", message);
-                        int pos = message.lastIndexOf(' ');
-                        if(pos != -1) {
-                            try {
-                                sendMessageToRoom(userSession, null, message, message.substring(pos + 1));
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }   
-                        }
-                        System.out.println("Message received from car : " + message);
-                    }
-                    
-                });
-            }
 
-            @Override
-            public void onClose(Session session, CloseReason closeReason) {
-                carAvailable = false;
-                Log.log(Level.INFO, carController, "Car has closed the connection.", closeReason);
-                System.out.println("Car has closed the connection : " + closeReason);
-                carController.shutdown();
-                System.out.println("Stopped car controller");
-            }
+    private void sendToCar(Session session, String userid, CarDirection direction, Long value) throws IOException {
+        CarFleet cars = fleet;
+        CarInstruction instruction = null;
+        CarDriver car = null;
+        if (cars == null) {
+            // still validate the command, so the player hears about a bad value first
+            new CarInstruction(userid, direction, value);
+        } else {
+            car = cars.select(userid);
+            instruction = car.sendInstruction(userid, direction, value);
+        }
+        if (instruction == null) {
+            sendMessageToRoom(session, null, "The car is not connected at the moment, please try again shortly", userid);
+            return;
+        }
+        carReplies.sent(instruction);
+        Log.log(Log.Category.COMMAND, Level.INFO, car, "Queueing instruction to car {0} : {1}", cars.numberOf(car), instruction);
+    }
 
-            @Override
-            public void onError(Session session, Throwable thr) {
-                carAvailable = false;
-                Log.log(Level.INFO, carController, "Error with car connection.", thr.getMessage());
-                System.out.println("Error with car connection : " + thr.getMessage());
-                carController.shutdown();
-                System.out.println("Stopped car controller");
+    // show or change which car a player is driving
+    private void chooseCar(Session session, String userid, String argument) throws IOException {
+        CarFleet cars = fleet;
+        if (cars == null) {
+            sendMessageToRoom(session, null, "The car is not connected at the moment, please try again shortly", userid);
+            return;
+        }
+        if (argument == null) {
+            sendMessageToRoom(session, null, "You are driving car " + cars.numberOf(cars.select(userid)) + " of " + cars.size(), userid);
+            return;
+        }
+        try {
+            int number = Integer.parseInt(argument.trim());
+            if (cars.choose(userid, number)) {
+                sendMessageToRoom(session, null, "You are now driving car " + number, userid);
+                return;
             }
-            
-        }, null, new URI(carEndPoint));
+        } catch (NumberFormatException e) {
+            // fall through to the error
+        }
+        sendMessageToRoom(session, null, "ERROR : Pick a car between 1 and " + cars.size(), userid);
     }
     
 }
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.io.IOException;
+
+import javax.websocket.Session;
+
+import net.wasdev.gameon.protocol.RoomMessage;
+
+/**
+ * Maps the first word of a command, e.g. <code>/look</code>, to the code that
+ * handles it.
+ *
+ * Verbs are matched case-insensitively with a hash lookup over the characters of
+ * the message itself, so finding the handler does not allocate and costs the
+ * same however many commands are registered.
+ */
+public class CommandDispatcher {
+
+    /**
+     * A command handler.
+     */
+    public interface Command {
+        /**
+         * @param session
+         *            the mediator session the command arrived on
+         * @param msg
+         *            the decoded command
+         * @param argStart
+         *            index into {@link RoomMessage#getContent()} of the text after
+         *            the verb and its separating space, or -1 if there was no space
+         */
+        void execute(Session session, RoomMessage msg, int argStart) throws IOException;
+    }
+
+    private static final class Entry {
+        private final String verb;
+        private final int hash;
+        private final Command command;
+
+        Entry(String verb, int hash, Command command) {
+            this.verb = verb;
+            this.hash = hash;
+            this.command = command;
+        }
+    }
+
+    // open addressing, always at most half full; replaced as a whole on register
+    private volatile Entry[] table = new Entry[16];
+    private int size = 0;
+
+    /**
+     * Register a handler for a verb, replacing any existing handler for it.
+     */
+    public synchronized void register(String verb, Command command) {
+        Entry[] current = table;
+        Entry[] next = new Entry[(size + 1) * 2 > current.length ? current.length * 2 : current.length];
+        for (Entry e : current) {
+            if (e != null && !e.verb.equalsIgnoreCase(verb)) {
+                insert(next, e);
+            }
+        }
+        insert(next, new Entry(verb, hash(verb, verb.length()), command));
+        int count = 0;
+        for (Entry e : next) {
+            if (e != null) {
+                count++;
+            }
+        }
+        size = count;
+        table = next;
+    }
+
+    /**
+     * Run the handler for the command in the message.
+     *
+     * @return false if no handler is registered for the command's verb
+     */
+    public boolean dispatch(Session session, RoomMessage msg) throws IOException {
+        String content = msg.getContent();
+        int space = content.indexOf(' ');
+        int verbEnd = space < 0 ? content.length() : space;
+        Command command = lookup(content, verbEnd);
+        if (command == null) {
+            return false;
+        }
+        command.execute(session, msg, space < 0 ? -1 : space + 1);
+        return true;
+    }
+
+    /**
+     * Find the handler for the verb at the start of some text.
+     *
+     * @param content
+     *            the text containing the verb
+     * @param verbEnd
+     *            index of the end of the verb in the text
+     * @return the handler, or null if there is none
+     */
+    public Command lookup(String content, int verbEnd) {
+        Entry[] current = table;
+        int mask = current.length - 1;
+        int hash = hash(content, verbEnd);
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            Entry e = current[i];
+            if (e == null) {
+                return null;
+            }
+            if (e.hash == hash && e.verb.length() == verbEnd && content.regionMatches(true, 0, e.verb, 0, verbEnd)) {
+                return e.command;
+            }
+        }
+    }
+
+    private static void insert(Entry[] table, Entry entry) {
+        int mask = table.length - 1;
+        int i = entry.hash & mask;
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = entry;
+    }
+
+    private static int hash(String s, int end) {
+        int h = 0;
+        for (int i = 0; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(s.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+}
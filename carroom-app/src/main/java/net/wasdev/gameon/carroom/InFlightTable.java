@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+import net.wasdev.gameon.metrics.Timer;
+
+/**
+ * Follows each instruction from being queued, through its first pulse going to
+ * the car, to the car acknowledging it, using the instruction's message group
+ * (msggrp) to match the car's reply.
+ *
+ * For each kind of command this gives the time spent queued behind other
+ * players' instructions, and the car's round trip from first pulse to reply.
+ * Memory is bounded: instructions the car never acknowledges are forgotten
+ * after a while, and if too many are outstanding the oldest are dropped.
+ */
+public class InFlightTable {
+
+    private static final class Group {
+        private final String id;
+        private final String userid;
+        private final CarDirection direction;
+        private final long queuedAt = System.nanoTime();
+        private long firstPulseAt = 0;
+
+        Group(String id, String userid, CarDirection direction) {
+            this.id = id;
+            this.userid = userid;
+            this.direction = direction;
+        }
+    }
+
+    private final int capacity;
+    private final long expiryNanos;
+    // oldest first, so expired and evicted groups are always at the front
+    private final LinkedHashMap<String, Group> groups = new LinkedHashMap<>();
+    // each player's groups that have had their first pulse, oldest first, for replies without a msggrp
+    private final Map<String, ArrayDeque<Group>> sentByUser = new HashMap<>();
+
+    private final Map<CarDirection, Timer> queueWait = new EnumMap<>(CarDirection.class);
+    private final Map<CarDirection, Timer> roundTrip = new EnumMap<>(CarDirection.class);
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final AtomicLong unmatched = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * @param capacity
+     *            the most instructions to follow at once
+     * @param expiryMillis
+     *            how long to wait for the car to acknowledge an instruction
+     */
+    public InFlightTable(int capacity, long expiryMillis) {
+        this.capacity = capacity;
+        this.expiryNanos = TimeUnit.MILLISECONDS.toNanos(expiryMillis);
+        for (CarDirection direction : CarDirection.values()) {
+            queueWait.put(direction, new Timer());
+            roundTrip.put(direction, new Timer());
+        }
+    }
+
+    /**
+     * An instruction has been queued for the car.
+     */
+    public synchronized void queued(CarInstruction instruction) {
+        expire(System.nanoTime());
+        if (groups.size() >= capacity) {
+            Iterator<Group> oldest = groups.values().iterator();
+            unsent(oldest.next());
+            oldest.remove();
+            evicted.incrementAndGet();
+        }
+        groups.put(instruction.getID(), new Group(instruction.getID(), instruction.getUserid(), instruction.getDirection()));
+    }
+
+    /**
+     * A pulse of an instruction has been sent to the car. Only the first pulse
+     * of each instruction is timed.
+     */
+    public synchronized void pulseSent(CarInstruction instruction) {
+        Group group = groups.get(instruction.getID());
+        if (group != null && group.firstPulseAt == 0) {
+            group.firstPulseAt = System.nanoTime();
+            queueWait.get(group.direction).record(group.firstPulseAt - group.queuedAt);
+            // a player's pulses go out in the order they were queued, so this is their newest sent group
+            sentByUser.computeIfAbsent(group.userid, u -> new ArrayDeque<>()).add(group);
+        }
+    }
+
+    /**
+     * The car has replied. The reply is matched on its msggrp, or if it does
+     * not have one, to the player's oldest instruction that has been sent.
+     *
+     * @param reply
+     *            the car's message, ending with the player's id
+     */
+    public synchronized void replied(String reply) {
+        long now = System.nanoTime();
+        Group group;
+        String id = groupOf(reply);
+        if (id != null) {
+            group = groups.remove(id);
+            if (group != null) {
+                unsent(group);
+            }
+        } else {
+            group = removeOldestSent(useridOf(reply));
+        }
+        if (group == null || group.firstPulseAt == 0) {
+            // already acknowledged, expired, or never ours
+            unmatched.incrementAndGet();
+            return;
+        }
+        acknowledged.incrementAndGet();
+        roundTrip.get(group.direction).record(now - group.firstPulseAt);
+    }
+
+    /**
+     * Forget instructions the car has not acknowledged in time.
+     */
+    public synchronized void expire() {
+        expire(System.nanoTime());
+    }
+
+    public synchronized int size() {
+        return groups.size();
+    }
+
+    /**
+     * Publish the latencies and counts.
+     *
+     * @param prefix
+     *            put in front of every metric name, e.g. "car.car-1"
+     */
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        for (CarDirection direction : CarDirection.values()) {
+            String name = prefix + ".latency." + direction.name().toLowerCase();
+            registry.register(name + ".queueWait", queueWait.get(direction));
+            registry.register(name + ".roundTrip", roundTrip.get(direction));
+        }
+        registry.gauge(prefix + ".inflight.size", this::size);
+        registry.gauge(prefix + ".inflight.acknowledged", acknowledged::get);
+        registry.gauge(prefix + ".inflight.unmatched", unmatched::get);
+        registry.gauge(prefix + ".inflight.expired", expired::get);
+        registry.gauge(prefix + ".inflight.evicted", evicted::get);
+    }
+
+    private void expire(long now) {
+        for (Iterator<Group> it = groups.values().iterator(); it.hasNext();) {
+            Group group = it.next();
+            if (now - group.queuedAt <= expiryNanos) {
+                return;
+            }
+            unsent(group);
+            it.remove();
+            expired.incrementAndGet();
+        }
+    }
+
+    private Group removeOldestSent(String userid) {
+        ArrayDeque<Group> sent = userid == null ? null : sentByUser.get(userid);
+        if (sent == null) {
+            return null;
+        }
+        Group group = sent.poll();
+        if (sent.isEmpty()) {
+            sentByUser.remove(userid);
+        }
+        groups.remove(group.id);
+        return group;
+    }
+
+    // take a group that is leaving the table out of its player's sent groups
+    private void unsent(Group group) {
+        if (group.firstPulseAt == 0) {
+            return;
+        }
+        ArrayDeque<Group> sent = sentByUser.get(group.userid);
+        if (sent == null) {
+            return;
+        }
+        // groups leave oldest first, so this is nearly always the head
+        if (sent.peek() == group) {
+            sent.poll();
+        } else {
+            sent.removeFirstOccurrence(group);
+        }
+        if (sent.isEmpty()) {
+            sentByUser.remove(group.userid);
+        }
+    }
+
+    /**
+     * @return the message group in a reply from the car, e.g. the id in
+     *         <code>... msggrp:0f8fad5b-d9cb-469f-a165-70867728950e for user</code>
+     *         or <code>{'msggrp':'0f8f...'}</code>, or null if there is not one
+     */
+    static String groupOf(String reply) {
+        int pos = reply.indexOf("msggrp");
+        if (pos < 0) {
+            return null;
+        }
+        pos += 6;
+        // skip the quotes, colon and spaces between the name and the value
+        while (pos < reply.length() && ":'\" =".indexOf(reply.charAt(pos)) >= 0) {
+            pos++;
+        }
+        int end = pos;
+        while (end < reply.length() && (Character.isLetterOrDigit(reply.charAt(end)) || reply.charAt(end) == '-')) {
+            end++;
+        }
+        return end > pos ? reply.substring(pos, end) : null;
+    }
+
+    // the car ends every reply with the player's id
+    private static String useridOf(String reply) {
+        int pos = reply.lastIndexOf(' ');
+        return pos == -1 ? null : reply.substring(pos + 1);
+    }
+}
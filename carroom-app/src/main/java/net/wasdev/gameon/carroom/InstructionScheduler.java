@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules car instructions fairly between users.
+ *
+ * Each user has their own FIFO of instructions, and every call to {@link #next()}
+ * (one per 50ms tick) takes a single pulse from the next user in round-robin
+ * order. A user with nothing queued therefore waits at most one tick per other
+ * active user for their first pulse, however much the others have queued.
+ *
+ * @param <T> the instruction type
+ */
+public class InstructionScheduler<T> {
+
+    private static final class Entry<T> {
+        private final T instruction;
+        private final long queuedAt = System.nanoTime();
+        private int remainingPulses;
+        private boolean started = false;
+
+        Entry(T instruction, int pulses) {
+            this.instruction = instruction;
+            this.remainingPulses = pulses;
+        }
+    }
+
+    private static final class UserQueue<T> {
+        private final String userid;
+        private final ArrayDeque<Entry<T>> entries = new ArrayDeque<>();
+        private long pulses = 0;
+        private long lastWaitNanos = 0;
+        private long maxWaitNanos = 0;
+        // the user has left, so drop them once their queue drains
+        private boolean released = false;
+
+        UserQueue(String userid) {
+            this.userid = userid;
+        }
+    }
+
+    /**
+     * A point in time view of one user's queue.
+     */
+    public static final class UserStats {
+        private final int depth;
+        private final long pendingPulses;
+        private final long headWaitMillis;
+        private final long lastWaitMillis;
+        private final long maxWaitMillis;
+
+        UserStats(int depth, long pendingPulses, long headWaitMillis, long lastWaitMillis, long maxWaitMillis) {
+            this.depth = depth;
+            this.pendingPulses = pendingPulses;
+            this.headWaitMillis = headWaitMillis;
+            this.lastWaitMillis = lastWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+        }
+
+        /** @return the number of queued instructions */
+        public int getDepth() {
+            return depth;
+        }
+
+        /** @return the number of 50ms pulses still to send */
+        public long getPendingPulses() {
+            return pendingPulses;
+        }
+
+        /** @return how long the instruction at the head has been waiting for its first pulse, 0 if it has started */
+        public long getHeadWaitMillis() {
+            return headWaitMillis;
+        }
+
+        /** @return the time from queueing to first pulse of the user's most recently started instruction */
+        public long getLastWaitMillis() {
+            return lastWaitMillis;
+        }
+
+        /** @return the longest time from queueing to first pulse seen for this user */
+        public long getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "depth=" + depth + ", pulses=" + pendingPulses + ", headWait=" + headWaitMillis + "ms, lastWait="
+                    + lastWaitMillis + "ms, maxWait=" + maxWaitMillis + "ms";
+        }
+    }
+
+    // every user who has queued something, until they are released
+    private final Map<String, UserQueue<T>> users = new HashMap<>();
+    // users with something queued, in the order they will next be served
+    private final ArrayDeque<UserQueue<T>> active = new ArrayDeque<>();
+    private long maxWaitNanos = 0;
+    private long totalPulses = 0;
+
+    /**
+     * Queue an instruction to be sent a number of times.
+     *
+     * @param userid
+     *            the user the instruction came from
+     * @param instruction
+     *            the instruction
+     * @param pulses
+     *            how many 50ms pulses to send it for, must be at least one
+     */
+    public synchronized void add(String userid, T instruction, int pulses) {
+        if (pulses < 1) {
+            throw new IllegalArgumentException("An instruction needs at least one pulse : " + pulses);
+        }
+        UserQueue<T> queue = users.get(userid);
+        if (queue == null) {
+            queue = new UserQueue<>(userid);
+            users.put(userid, queue);
+        }
+        queue.released = false;
+        if (queue.entries.isEmpty()) {
+            active.add(queue);
+        }
+        queue.entries.add(new Entry<>(instruction, pulses));
+        queue.pulses += pulses;
+        totalPulses += pulses;
+    }
+
+    /**
+     * Take the next pulse, moving on to the next user.
+     *
+     * @return the instruction to send, or null if nothing is queued
+     */
+    public synchronized T next() {
+        UserQueue<T> queue = active.poll();
+        if (queue == null) {
+            return null;
+        }
+        Entry<T> entry = queue.entries.peek();
+        if (!entry.started) {
+            entry.started = true;
+            queue.lastWaitNanos = System.nanoTime() - entry.queuedAt;
+            queue.maxWaitNanos = Math.max(queue.maxWaitNanos, queue.lastWaitNanos);
+            maxWaitNanos = Math.max(maxWaitNanos, queue.lastWaitNanos);
+        }
+        queue.pulses--;
+        totalPulses--;
+        if (--entry.remainingPulses <= 0) {
+            queue.entries.poll();
+        }
+        if (queue.entries.isEmpty()) {
+            // the wait statistics outlive the queue, until the user leaves
+            if (queue.released) {
+                users.remove(queue.userid);
+            }
+        } else {
+            active.add(queue);
+        }
+        return entry.instruction;
+    }
+
+    public synchronized boolean isEmpty() {
+        return active.isEmpty();
+    }
+
+    /**
+     * @return the number of users with instructions queued
+     */
+    public synchronized int getActiveUsers() {
+        return active.size();
+    }
+
+    /**
+     * @return the number of 50ms pulses still to send, for all users
+     */
+    public synchronized long getPendingPulses() {
+        return totalPulses;
+    }
+
+    /**
+     * @return the longest time from queueing to first pulse seen for any user
+     */
+    public synchronized long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    /**
+     * @return the number of instructions queued, for all users
+     */
+    public synchronized int getQueueDepth() {
+        int depth = 0;
+        for (UserQueue<T> queue : active) {
+            depth += queue.entries.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return how long the oldest instruction still waiting for its first pulse
+     *         has been queued, 0 if none are waiting
+     */
+    public synchronized long getOldestWaitMillis() {
+        long now = System.nanoTime();
+        long oldest = 0;
+        for (UserQueue<T> queue : active) {
+            // only the head can have started, so the first waiting entry is one of the first two
+            for (Entry<T> entry : queue.entries) {
+                if (!entry.started) {
+                    oldest = Math.max(oldest, now - entry.queuedAt);
+                    break;
+                }
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(oldest);
+    }
+
+    /**
+     * @return the number of instructions queued for a user
+     */
+    public synchronized int getQueueDepth(String userid) {
+        UserQueue<T> queue = users.get(userid);
+        return queue == null ? 0 : queue.entries.size();
+    }
+
+    /**
+     * Forget a user who has left. Anything they still have queued is sent first.
+     */
+    public synchronized void release(String userid) {
+        UserQueue<T> queue = users.get(userid);
+        if (queue == null) {
+            return;
+        }
+        if (queue.entries.isEmpty()) {
+            users.remove(userid);
+        } else {
+            queue.released = true;
+        }
+    }
+
+    /**
+     * @return the statistics for a user, or null if they have not queued
+     *         anything since they arrived
+     */
+    public synchronized UserStats getStats(String userid) {
+        UserQueue<T> queue = users.get(userid);
+        return queue == null ? null : stats(queue, System.nanoTime());
+    }
+
+    /**
+     * @return the statistics for every user who has queued something and not left
+     */
+    public synchronized Map<String, UserStats> getStats() {
+        if (users.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        long now = System.nanoTime();
+        Map<String, UserStats> result = new HashMap<>();
+        for (UserQueue<T> queue : users.values()) {
+            result.put(queue.userid, stats(queue, now));
+        }
+        return result;
+    }
+
+    private UserStats stats(UserQueue<T> queue, long now) {
+        Entry<T> head = queue.entries.peek();
+        long headWait = head == null || head.started ? 0 : now - head.queuedAt;
+        return new UserStats(queue.entries.size(), queue.pulses, TimeUnit.NANOSECONDS.toMillis(headWait),
+                TimeUnit.NANOSECONDS.toMillis(queue.lastWaitNanos), TimeUnit.NANOSECONDS.toMillis(queue.maxWaitNanos));
+    }
+}
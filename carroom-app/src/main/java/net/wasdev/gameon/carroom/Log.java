@@ -15,30 +15,374 @@
  *******************************************************************************/
 package net.wasdev.gameon.carroom;
 
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import net.wasdev.gameon.metrics.MetricsRegistry;
+
 /**
  * Wrapper to provide a single logger with a consistent format that helps
  * identify different endpoints in the messages
  *
+ * Messages are not written by the caller. They go into a fixed ring of slots
+ * and a background thread formats and writes them, so logging from the command
+ * and car paths never waits on the console. Arguments are only turned into text
+ * when the message is written, using the usual <code>{0}</code> placeholders.
+ * If the ring is full the message is dropped and counted, apart from warnings,
+ * which are then written straight away. The writer sleeps until there is
+ * something to write, and {@link #shutdown()} writes whatever is left and stops
+ * it, after which messages are written by the caller.
+ *
+ * Each message has a {@link Category}, and busy categories can be sampled or
+ * limited to so many messages a second, see {@link #configure}.
  */
 public class Log {
     private final static Logger log = Logger.getLogger("net.wasdev.gameon.mediator");
-    private static final String endpoint_log_format = "%-10s: %s";
 
-    public static void log(Level level, Object source, String message, Object... args) {
-        if (log.isLoggable(level)) {
-            String msg = String.format(endpoint_log_format, getHash(source), message);
-            log.log(useLevel(level), msg, args);
+    /**
+     * What a message is about, so the noisy ones can be turned down.
+     */
+    public enum Category {
+        /** Anything not listed below. */
+        GENERAL,
+        /** Connections to the room opening and closing. */
+        CONNECTION,
+        /** Commands from players. */
+        COMMAND,
+        /** Each pulse sent to a car, up to 20 a second for each driver. */
+        PULSE,
+        /** Replies from the cars. */
+        CAR
+    }
+
+    // sampling and rate limiting for one category
+    private static final class Limiter {
+        volatile int sampleEvery = 1;
+        volatile int maxPerSecond = 0;
+        final AtomicLong seen = new AtomicLong();
+        final AtomicLong suppressed = new AtomicLong();
+        final AtomicInteger inSecond = new AtomicInteger();
+        volatile long second;
+
+        boolean admit() {
+            int every = sampleEvery;
+            if (every > 1 && seen.incrementAndGet() % every != 0) {
+                suppressed.incrementAndGet();
+                return false;
+            }
+            int limit = maxPerSecond;
+            if (limit > 0) {
+                long now = System.nanoTime() / 1_000_000_000L;
+                if (now != second) {
+                    second = now;
+                    inSecond.set(0);
+                }
+                if (inSecond.incrementAndGet() > limit) {
+                    suppressed.incrementAndGet();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // one message waiting to be written
+    private static final class Slot {
+        // the position in the ring this slot holds once it is filled in
+        volatile long sequence = -1;
+        Level level;
+        Object source;
+        String message;
+        Object[] args;
+        Object arg0;
+        Object arg1;
+        int argCount;
+        Throwable thrown;
+    }
+
+    private static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+    private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+
+    private static final Slot[] ring = new Slot[CAPACITY];
+    // the next position to fill, and the next to write out
+    private static final AtomicLong head = new AtomicLong();
+    private static volatile long tail = 0;
+    private static final AtomicLong dropped = new AtomicLong();
+
+    // started with the first message, see start() and shutdown()
+    private static volatile Thread writer;
+    private static volatile boolean stopped = false;
+    // set by the writer before it parks, so producers know to wake it
+    private static volatile boolean sleeping = false;
+    // set once the writer has gone, or was never started, after a shutdown
+    private static volatile boolean writerDone = false;
+
+    private static final Limiter[] limiters = new Limiter[Category.values().length];
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Slot();
+        }
+        for (int i = 0; i < limiters.length; i++) {
+            limiters[i] = new Limiter();
+        }
+        configure(null, "connection:50,command:100,pulse:20,car:20");
+    }
+
+    /**
+     * Start the background writer, if it is not already running. This happens
+     * anyway with the first message.
+     */
+    public static synchronized void start() {
+        if (writer != null || stopped) {
+            return;
         }
+        Thread thread = new Thread(Log::write, "log-writer");
+        thread.setDaemon(true);
+        thread.start();
+        writer = thread;
+    }
+
+    /**
+     * Write whatever is queued and stop the background writer. Messages logged
+     * from now on are written by the caller.
+     */
+    public static void shutdown() {
+        Thread thread;
+        synchronized (Log.class) {
+            stopped = true;
+            thread = writer;
+            if (thread == null) {
+                writerDone = true;
+            }
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(SHUTDOWN_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // anything that slipped in while the writer was finishing
+        drain();
+    }
+
+    public static void log(Level level, Object source, String message, Object... args) {
+        log(Category.GENERAL, level, source, message, args);
     }
 
     public static void log(Level level, Object source, String message, Throwable thrown) {
-        if (log.isLoggable(level)) {
-            String msg = String.format(endpoint_log_format, getHash(source), message);
+        if (log.isLoggable(level) && limiters[Category.GENERAL.ordinal()].admit()) {
+            publish(level, source, message, 0, null, null, null, thrown);
+        }
+    }
+
+    public static void log(Category category, Level level, Object source, String message) {
+        if (log.isLoggable(level) && limiters[category.ordinal()].admit()) {
+            publish(level, source, message, 0, null, null, null, null);
+        }
+    }
+
+    public static void log(Category category, Level level, Object source, String message, Object arg0) {
+        if (log.isLoggable(level) && limiters[category.ordinal()].admit()) {
+            publish(level, source, message, 1, arg0, null, null, null);
+        }
+    }
+
+    public static void log(Category category, Level level, Object source, String message, Object arg0, Object arg1) {
+        if (log.isLoggable(level) && limiters[category.ordinal()].admit()) {
+            publish(level, source, message, 2, arg0, arg1, null, null);
+        }
+    }
+
+    public static void log(Category category, Level level, Object source, String message, Object... args) {
+        if (log.isLoggable(level) && limiters[category.ordinal()].admit()) {
+            publish(level, source, message, -1, null, null, args, null);
+        }
+    }
+
+    /**
+     * Set how much of each category is written.
+     *
+     * @param sampling
+     *            e.g. <code>pulse:10</code> to write one in ten pulse messages,
+     *            or null to leave as it is
+     * @param rateLimits
+     *            e.g. <code>pulse:20,car:50</code> for at most that many messages
+     *            a second, 0 for no limit, or null to leave as it is
+     */
+    public static void configure(String sampling, String rateLimits) {
+        configure(sampling, (limiter, value) -> limiter.sampleEvery = Math.max(1, value));
+        configure(rateLimits, (limiter, value) -> limiter.maxPerSecond = Math.max(0, value));
+    }
+
+    private interface Setting {
+        void apply(Limiter limiter, int value);
+    }
+
+    private static void configure(String settings, Setting setting) {
+        if (settings == null || settings.trim().isEmpty()) {
+            return;
+        }
+        for (String entry : settings.split(",")) {
+            int colon = entry.indexOf(':');
+            try {
+                Category category = Category.valueOf(entry.substring(0, colon).trim().toUpperCase(Locale.ROOT));
+                setting.apply(limiters[category.ordinal()], Integer.parseInt(entry.substring(colon + 1).trim()));
+            } catch (RuntimeException e) {
+                System.out.println("Ignoring log setting " + entry + ", expected category:number");
+            }
+        }
+    }
+
+    /**
+     * Publish how much logging is being dropped or held back.
+     *
+     * @param prefix
+     *            put in front of every metric name, e.g. "log"
+     */
+    public static void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + ".queueDepth", () -> head.get() - tail);
+        registry.gauge(prefix + ".dropped", dropped::get);
+        for (Category category : Category.values()) {
+            registry.gauge(prefix + "." + category.name().toLowerCase(Locale.ROOT) + ".suppressed",
+                    limiters[category.ordinal()].suppressed::get);
+        }
+    }
+
+    // claim a slot and fill it in, or give up if the writer is too far behind
+    private static void publish(Level level, Object source, String message, int argCount, Object arg0, Object arg1,
+            Object[] args, Throwable thrown) {
+        if (stopped) {
+            emit(level, source, message, argCount, arg0, arg1, args, thrown);
+            return;
+        }
+        if (writer == null) {
+            start();
+        }
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= CAPACITY) {
+                dropped.incrementAndGet();
+                if (level.intValue() >= Level.WARNING.intValue()) {
+                    emit(level, source, message, argCount, arg0, arg1, args, thrown);
+                }
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = ring[(int) (sequence & MASK)];
+        slot.level = level;
+        slot.source = source;
+        slot.message = message;
+        slot.argCount = argCount;
+        slot.arg0 = arg0;
+        slot.arg1 = arg1;
+        slot.args = args;
+        slot.thrown = thrown;
+        slot.sequence = sequence;
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+        if (stopped) {
+            // stopped while this was being queued, the writer may already have gone
+            drain();
+        }
+    }
+
+    // the writer thread, taking messages from the ring in order
+    private static void write() {
+        long next = 0;
+        while (true) {
+            Slot slot = ring[(int) (next & MASK)];
+            if (slot.sequence != next) {
+                if (stopped) {
+                    // a message queued after this check is written by its producer's
+                    // drain(), which waits for the lock and then sees writerDone
+                    synchronized (Log.class) {
+                        if (head.get() == next) {
+                            writerDone = true;
+                            return;
+                        }
+                    }
+                    Thread.yield(); // a message is still being filled in
+                    continue;
+                }
+                // a producer fills in its slot before it checks sleeping, and we check
+                // the slot again after setting it, so a wake up cannot be missed
+                sleeping = true;
+                if (slot.sequence != next && !stopped) {
+                    LockSupport.park();
+                }
+                sleeping = false;
+                continue;
+            }
+            take(slot, next++);
+        }
+    }
+
+    // once the writer has gone, write out what has been filled in since, in order.
+    // A slot still being filled in stops this, and its producer drains again.
+    private static synchronized void drain() {
+        if (!writerDone) {
+            return; // the writer will get to it
+        }
+        for (long next = tail; ring[(int) (next & MASK)].sequence == next; next++) {
+            take(ring[(int) (next & MASK)], next);
+        }
+    }
+
+    // write out a filled in slot, and hand it back to the producers
+    private static void take(Slot slot, long sequence) {
+        Level level = slot.level;
+        Object source = slot.source;
+        String message = slot.message;
+        int argCount = slot.argCount;
+        Object arg0 = slot.arg0;
+        Object arg1 = slot.arg1;
+        Object[] args = slot.args;
+        Throwable thrown = slot.thrown;
+        slot.source = slot.arg0 = slot.arg1 = null;
+        slot.args = null;
+        slot.thrown = null;
+        tail = sequence + 1;
+        try {
+            emit(level, source, message, argCount, arg0, arg1, args, thrown);
+        } catch (RuntimeException e) {
+            // a broken toString, carry on with the next message
+        }
+    }
+
+    private static void emit(Level level, Object source, String message, int argCount, Object arg0, Object arg1,
+            Object[] args, Throwable thrown) {
+        String msg = format(getHash(source), message);
+        if (thrown != null) {
             log.log(useLevel(level), msg, thrown);
+        } else if (argCount == 0) {
+            log.log(useLevel(level), msg);
+        } else if (argCount == 1) {
+            log.log(useLevel(level), msg, arg0);
+        } else if (argCount == 2) {
+            log.log(useLevel(level), msg, new Object[] { arg0, arg1 });
+        } else {
+            log.log(useLevel(level), msg, args);
+        }
+    }
+
+    // the same as String.format("%-10s: %s", hash, message)
+    private static String format(String hash, String message) {
+        StringBuilder msg = new StringBuilder(12 + message.length()).append(hash);
+        for (int i = hash.length(); i < 10; i++) {
+            msg.append(' ');
         }
+        return msg.append(": ").append(message).toString();
     }
 
     private static String getHash(Object source) {
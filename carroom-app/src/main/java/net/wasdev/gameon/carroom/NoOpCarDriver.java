@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+/**
+ * A car that accepts and validates every instruction, then drops it. Useful for
+ * measuring the room on its own.
+ */
+public class NoOpCarDriver implements CarDriver {
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public CarInstruction sendInstruction(String userid, CarDirection direction, long quantity) throws NumberFormatException {
+        return new CarInstruction(userid, direction, quantity);
+    }
+
+    @Override
+    public long getPendingPulses() {
+        return 0;
+    }
+
+    @Override
+    public void release(String userid) {
+    }
+
+    @Override
+    public String toString() {
+        return "no-op car";
+    }
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.websocket.Session;
+
+/**
+ * Who is in the room, shared by every connection to it.
+ *
+ * The container creates a {@link CarRoom} per WebSocket connection, so the
+ * room-wide view lives here: open connections by session id, players by user
+ * id, and which players each session is carrying. Everything is held in
+ * concurrent hash maps, so joining, leaving and looking up a player never
+ * copies or locks the whole room, and broadcasts iterate the live view.
+ */
+public class PlayerRegistry {
+
+    /**
+     * A player and the session that carries their messages.
+     */
+    public static final class Player {
+        private final String userId;
+        private final String username;
+        private final Session session;
+
+        Player(String userId, String username, Session session) {
+            this.userId = userId;
+            this.username = username;
+            this.session = session;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        @Override
+        public String toString() {
+            return username + " (" + userId + ") on session " + session.getId();
+        }
+    }
+
+    // every open connection, whether or not any players have arrived on it
+    private final ConcurrentHashMap<String, Session> connections = new ConcurrentHashMap<>();
+    // the connections carrying at least one player, which is who broadcasts go to
+    private final ConcurrentHashMap<String, Session> inRoom = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Player> players = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> usersBySession = new ConcurrentHashMap<>();
+
+    /**
+     * A connection has been opened.
+     */
+    public void opened(Session session) {
+        connections.put(session.getId(), session);
+    }
+
+    /**
+     * A connection has closed, taking any players on it with it.
+     *
+     * @return the players that were on the connection
+     */
+    public Collection<Player> closed(Session session) {
+        String id = session.getId();
+        connections.remove(id);
+        inRoom.remove(id);
+        Set<String> users = usersBySession.remove(id);
+        if (users == null) {
+            return Collections.emptyList();
+        }
+        List<Player> gone = new ArrayList<>(users.size());
+        for (String userId : users) {
+            // only if they have not since arrived on another connection
+            Player player = players.get(userId);
+            if (player != null && player.session == session && players.remove(userId, player)) {
+                gone.add(player);
+            }
+        }
+        return gone;
+    }
+
+    /**
+     * A player has arrived. A player arriving on a different session to the one
+     * they were on is moved to it.
+     *
+     * @return true if the player was not already in the room
+     */
+    public boolean join(Session session, String userId, String username) {
+        Player previous = players.put(userId, new Player(userId, username, session));
+        if (previous != null && previous.session != session) {
+            forget(previous.session, userId);
+        }
+        String id = session.getId();
+        usersBySession.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(userId);
+        inRoom.put(id, session);
+        return previous == null;
+    }
+
+    /**
+     * A player has left.
+     *
+     * @return the player, or null if they were not in the room
+     */
+    public Player leave(String userId) {
+        Player player = players.remove(userId);
+        if (player != null) {
+            forget(player.session, userId);
+        }
+        return player;
+    }
+
+    /**
+     * @return the player, or null if they are not in the room
+     */
+    public Player getPlayer(String userId) {
+        return players.get(userId);
+    }
+
+    /**
+     * @return a live view of the sessions carrying players, for broadcasts
+     */
+    public Collection<Session> getSessions() {
+        return inRoom.values();
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public int getSessionCount() {
+        return inRoom.size();
+    }
+
+    public int getPlayerCount() {
+        return players.size();
+    }
+
+    // take a player off a session, and the session out of the room if it has no one left
+    private void forget(Session session, String userId) {
+        usersBySession.computeIfPresent(session.getId(), (id, users) -> {
+            users.remove(userId);
+            if (users.isEmpty()) {
+                inRoom.remove(id);
+                return null;
+            }
+            return users;
+        });
+    }
+}
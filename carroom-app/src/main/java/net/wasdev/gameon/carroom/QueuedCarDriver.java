@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import net.wasdev.gameon.journal.Journal;
+import net.wasdev.gameon.metrics.MetricsRegistry;
+import net.wasdev.gameon.metrics.Timer;
+
+/**
+ * The part of the car pipeline every real car shares: instructions are queued per
+ * player and a controller thread sends one pulse every 50ms, taking turns between
+ * players. Subclasses only provide the connection and the wire send.
+ */
+public abstract class QueuedCarDriver implements CarDriver {
+    private static final long TICK_MILLIS = 50;
+    // instructions followed until the car replies, and how long to wait for it
+    private static final int IN_FLIGHT_CAPACITY = 4096;
+    private static final long IN_FLIGHT_EXPIRY_MILLIS = 30000;
+
+    private final String name;
+    // instructions are queued per user, and the controller takes turns between them
+    private final InstructionScheduler<CarFrame> instructions = new InstructionScheduler<>();
+    private final CarFrameCodec codec;
+    private final InFlightTable inFlight = new InFlightTable(IN_FLIGHT_CAPACITY, IN_FLIGHT_EXPIRY_MILLIS);
+    private final ScheduledExecutorService controller;
+    // how far behind its 50ms schedule each tick of the controller runs
+    private final Timer tickLateness = new Timer();
+    private long firstTick;
+    private long ticks = 0;
+
+    protected QueuedCarDriver(String name) {
+        this(name, CarFrameCodec.JSON);
+    }
+
+    /**
+     * @param name
+     *            used in logs and thread names
+     * @param codec
+     *            encodes each instruction for the car when it is queued
+     */
+    protected QueuedCarDriver(String name, CarFrameCodec codec) {
+        this.name = name;
+        this.codec = codec;
+        this.controller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name + "-controller");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Start connecting to the car, without waiting for the connection.
+     */
+    protected abstract void connect();
+
+    /**
+     * Close the connection to the car.
+     */
+    protected abstract void disconnect();
+
+    /**
+     * Put one pulse of an instruction on the wire. Only called from the controller
+     * thread, and only when {@link #isReady()}.
+     */
+    protected abstract void transmit(CarFrame frame) throws IOException;
+
+    @Override
+    public void start() {
+        registerMetrics(MetricsRegistry.getDefault(), "car." + name);
+        connect();
+        firstTick = System.nanoTime();
+        controller.scheduleAtFixedRate(this::tick, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        controller.shutdownNow();
+        disconnect();
+        MetricsRegistry.getDefault().removeAll("car." + name + ".");
+    }
+
+    /**
+     * Publish this car's queue and controller metrics. Subclasses with more to
+     * say should add to them.
+     *
+     * @param prefix
+     *            put in front of every metric name, e.g. "car.car-1"
+     */
+    protected void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.register(prefix + ".tickLateness", tickLateness);
+        inFlight.registerMetrics(registry, prefix);
+        registry.gauge(prefix + ".queue.depth", instructions::getQueueDepth);
+        registry.gauge(prefix + ".queue.users", instructions::getActiveUsers);
+        registry.gauge(prefix + ".queue.pulses", instructions::getPendingPulses);
+        registry.gauge(prefix + ".queue.oldestWaitMillis", instructions::getOldestWaitMillis);
+        registry.gauge(prefix + ".queue.maxWaitMillis", instructions::getMaxWaitMillis);
+    }
+
+    @Override
+    public CarInstruction sendInstruction(String userid, CarDirection direction, long quantity) throws NumberFormatException {
+        CarInstruction instruction = new CarInstruction(userid, direction, quantity);
+        if (!isReady()) {
+            return null;
+        }
+        int pulses = instruction.getPulses();
+        if (pulses > 0) {
+            CarFrame frame = codec.encode(instruction);
+            inFlight.queued(instruction);
+            instructions.add(userid, frame, pulses);
+        }
+        return instruction;
+    }
+
+    @Override
+    public long getPendingPulses() {
+        return instructions.getPendingPulses();
+    }
+
+    @Override
+    public void release(String userid) {
+        instructions.release(userid);
+    }
+
+    public InstructionScheduler<CarFrame> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Match a reply from the car to the instruction it acknowledges, see
+     * {@link InFlightTable}. Subclasses call this for every message the car
+     * sends.
+     */
+    protected void replied(String message) {
+        inFlight.replied(message);
+    }
+
+    public InFlightTable getInFlight() {
+        return inFlight;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // send the next pulse, if there is one and the car is there to receive it
+    private void tick() {
+        tickLateness.record(System.nanoTime() - firstTick - TimeUnit.MILLISECONDS.toNanos(ticks++ * TICK_MILLIS));
+        if (ticks % 20 == 0) {
+            inFlight.expire();
+        }
+        if (!isReady() || instructions.isEmpty()) {
+            return;
+        }
+        try {
+            CarFrame frame = instructions.next();
+            Log.log(Log.Category.PULSE, Level.INFO, this, "Sending instruction to {0} : {1}", name, frame);
+            // marked first, as the car can reply before transmit returns
+            inFlight.pulseSent(frame.getInstruction());
+            transmit(frame);
+            Journal.record(Journal.Type.PULSE, name, frame.getInstruction().toJSON());
+        } catch (Exception e) {
+            Log.log(Level.WARNING, this, "Unable to send instruction to " + name, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
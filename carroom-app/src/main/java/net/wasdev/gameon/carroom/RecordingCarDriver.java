@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A car that is always there and remembers what it was sent, for running the
+ * room without a car while still queueing and pulsing instructions as normal.
+ */
+public class RecordingCarDriver extends QueuedCarDriver {
+    private final int capacity;
+    private final ArrayDeque<String> recorded = new ArrayDeque<>();
+    private final AtomicLong pulses = new AtomicLong();
+    private volatile boolean ready = false;
+
+    /**
+     * @param name
+     *            used in logs and thread names
+     * @param capacity
+     *            how many of the most recent pulses to keep
+     */
+    public RecordingCarDriver(String name, int capacity) {
+        super(name);
+        this.capacity = capacity;
+    }
+
+    @Override
+    protected void connect() {
+        ready = true;
+    }
+
+    @Override
+    protected void disconnect() {
+        ready = false;
+    }
+
+    @Override
+    protected void transmit(CarFrame frame) {
+        pulses.incrementAndGet();
+        synchronized (recorded) {
+            if (recorded.size() >= capacity) {
+                recorded.poll();
+            }
+            recorded.add(frame.toString());
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return the total number of pulses sent
+     */
+    public long getPulseCount() {
+        return pulses.get();
+    }
+
+    /**
+     * @return the most recent pulses, oldest first
+     */
+    public List<String> getRecorded() {
+        synchronized (recorded) {
+            return new ArrayList<>(recorded);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Remembers what the room last registered with the map service, so a restart
+ * with the same registration does not have to send it again.
+ *
+ * The room's <code>_id</code> is kept with a fingerprint of the registration
+ * payload, and with the map service and owner it was registered with, in a
+ * small properties file.
+ */
+public class RegistrationCache {
+    private static final String ID = "id";
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String URL = "mapSvcUrl";
+    private static final String OWNER = "owner";
+
+    private final Path file;
+
+    public RegistrationCache(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the id this room was registered under at the map service and by the
+     *         owner given, or null if there is no record of it
+     */
+    public String getId(String registrationUrl, String owner) {
+        Properties saved = load();
+        if (saved == null || !registrationUrl.equals(saved.getProperty(URL)) || !owner.equals(saved.getProperty(OWNER))) {
+            return null;
+        }
+        return saved.getProperty(ID);
+    }
+
+    /**
+     * @return the fingerprint of what was last registered, or null
+     */
+    public String getFingerprint() {
+        Properties saved = load();
+        return saved == null ? null : saved.getProperty(FINGERPRINT);
+    }
+
+    /**
+     * Record a successful registration.
+     */
+    public void store(String registrationUrl, String owner, String id, String fingerprint) {
+        Properties saved = new Properties();
+        saved.setProperty(URL, registrationUrl);
+        saved.setProperty(OWNER, owner);
+        saved.setProperty(ID, id);
+        saved.setProperty(FINGERPRINT, fingerprint);
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                saved.store(out, "Room registration, delete to register again");
+            }
+            // replaced in one go, so a crash never leaves half a file
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Unable to remember the room registration in " + file + " : " + e);
+        }
+    }
+
+    /**
+     * Forget the registration, e.g. because the map service no longer has it.
+     */
+    public void clear() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.out.println("Unable to forget the room registration in " + file + " : " + e);
+        }
+    }
+
+    private Properties load() {
+        Properties saved = new Properties();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            saved.load(in);
+            return saved;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Ignoring the unreadable room registration in " + file + " : " + e);
+            return null;
+        }
+    }
+}
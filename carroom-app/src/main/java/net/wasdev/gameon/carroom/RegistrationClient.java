@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Map;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import net.wasdev.gameon.security.TheNotVerySensibleHostnameVerifier;
+import net.wasdev.gameon.security.TheVeryTrustingTrustManager;
+
+/**
+ * The HTTP client the room talks to the map service with. Connections are
+ * pooled and kept alive between requests, and every request has connect and
+ * read timeouts, so an unreachable map service cannot hold anything up for
+ * long.
+ *
+ * Like the rest of the room, it trusts whatever certificate the map service
+ * presents, which saves importing the game on cert into a trust store.
+ */
+public class RegistrationClient implements Closeable {
+
+    /**
+     * What the map service said.
+     */
+    public static final class Response {
+        private final int status;
+        private final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public boolean isSuccess() {
+            return status >= 200 && status < 300;
+        }
+
+        /**
+         * @return true if the same request may well work if tried again later
+         */
+        public boolean isRetryable() {
+            return status >= 500 || status == 429 || status == 408;
+        }
+    }
+
+    private final PoolingHttpClientConnectionManager pool;
+    private final CloseableHttpClient client;
+
+    /**
+     * @param connectTimeoutMillis
+     *            how long to wait to connect, or for a pooled connection
+     * @param readTimeoutMillis
+     *            how long to wait for data once connected
+     */
+    public RegistrationClient(int connectTimeoutMillis, int readTimeoutMillis) {
+        Registry<ConnectionSocketFactory> sockets = RegistryBuilder.<ConnectionSocketFactory> create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(trustingContext(), new TheNotVerySensibleHostnameVerifier()))
+                .build();
+        pool = new PoolingHttpClientConnectionManager(sockets);
+        pool.setMaxTotal(4);
+        pool.setDefaultMaxPerRoute(4);
+        RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setConnectionRequestTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
+                .build();
+        client = HttpClients.custom()
+                .setConnectionManager(pool)
+                .setDefaultRequestConfig(config)
+                // the caller decides when to try again, and how long to wait first
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    public Response get(String url) throws IOException {
+        return execute(RequestBuilder.get(url)
+                .addHeader("Accept", "application/json,text/plain")
+                .build());
+    }
+
+    /**
+     * Send a json document, already encoded as UTF-8.
+     *
+     * @param method
+     *            POST or PUT
+     * @param headers
+     *            any more headers to send, e.g. the signature
+     */
+    public Response send(String method, String url, byte[] json, Map<String, String> headers) throws IOException {
+        RequestBuilder request = RequestBuilder.create(method)
+                .setUri(url)
+                .addHeader("Accept", "application/json,text/plain")
+                .setEntity(new ByteArrayEntity(json, ContentType.APPLICATION_JSON));
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.addHeader(header.getKey(), header.getValue());
+        }
+        return execute(request.build());
+    }
+
+    private Response execute(HttpUriRequest request) throws IOException {
+        try (CloseableHttpResponse response = client.execute(request)) {
+            // reading the whole entity hands the connection back to the pool
+            String body = response.getEntity() == null ? ""
+                    : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            return new Response(response.getStatusLine().getStatusCode(), body);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+        pool.close();
+    }
+
+    private static SSLContext trustingContext() {
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[] { new TheVeryTrustingTrustManager() }, new SecureRandom());
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to set up TLS for the map service", e);
+        }
+    }
+}
@@ -15,40 +15,43 @@
  *******************************************************************************/
 package net.wasdev.gameon.carroom;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.StringReader;
-import java.net.HttpURLConnection;
+import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
-import java.net.URL;
+import java.net.URLEncoder;
 import java.net.UnknownHostException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.GeneralSecurityException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.json.Json;
 import javax.json.JsonArray;
+import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
-import javax.json.JsonString;
+import javax.json.JsonWriter;
 import javax.naming.InitialContext;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 
-import net.wasdev.gameon.security.SecurityUtils;
-import net.wasdev.gameon.security.TheNotVerySensibleHostnameVerifier;
-import net.wasdev.gameon.security.TheVeryTrustingTrustManager;
+import net.wasdev.gameon.metrics.MetricsRegistry;
+import net.wasdev.gameon.security.RequestSigner;
 
 @WebListener
 public class RegistrationListener implements ServletContextListener {
@@ -56,7 +59,7 @@ public class RegistrationListener implements ServletContextListener {
     private static final String name = "CarRoom";
     private static final String fullName = "A room with a remote control car";
     private static final String description = "There is simple wooden table in the centre of the room, there is the smell of burning rubber in the air.\n\n"
-            + "Commands are : \n/left <lock 0 - 100>\n/right <lock 0 - 100>\n/forwards <seconds 0 - 10>\n/backwards <seconds 0 - 10>\n";
+            + "Commands are : \n/left <lock 0 - 100>\n/right <lock 0 - 100>\n/forwards <seconds 0 - 10>\n/backwards <seconds 0 - 10>\n/car <car number to drive>\n/view <width 20 - 200>\n";
     
     List<String> directions = Arrays.asList( "n", "s", "e", "w", "u", "d");
 
@@ -70,6 +73,27 @@ public class RegistrationListener implements ServletContextListener {
     private final String key;
     private final String userId;
     private final Boolean requiresRegistration;
+    // what we registered last time, null if not kept
+    private final RegistrationCache cache;
+
+    // how long to wait for the map service, and how often to try it
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final long FIRST_RETRY_MILLIS = 1000;
+    private static final long MAX_RETRY_MILLIS = 60000;
+
+    // how registration is getting on, published as registration.ready
+    private enum State {
+        NOT_REQUIRED, PENDING, REGISTERED, FAILED
+    }
+
+    private volatile State state = State.NOT_REQUIRED;
+    private final AtomicInteger attempts = new AtomicInteger();
+    private ScheduledExecutorService registrar;
+    private RegistrationClient client;
+    // signs the registration, only used on the registration thread
+    private RequestSigner signer;
 
     public RegistrationListener() {
         registrationUrl = getJNDIEntry("mapSvcUrl");
@@ -90,6 +114,9 @@ public class RegistrationListener implements ServletContextListener {
         userId = getJNDIEntry("ownerId");  
         
         requiresRegistration = getBooleanJNDIEntry("requiresRegistration");
+        String cacheFile = getJNDIEntry("registrationCache");
+        cache = cacheFile == null || cacheFile.isEmpty() || "none".equalsIgnoreCase(cacheFile) ? null
+                : new RegistrationCache(Paths.get(cacheFile));
         
         
         System.out.println("Requires registration? " + requiresRegistration);
@@ -128,157 +155,221 @@ public class RegistrationListener implements ServletContextListener {
 
 
     /**
-     * Entry point at application start, we use this to test for & perform room registration.
+     * Entry point at application start. Registration runs in the background, so the
+     * room can take connections while it finishes.
      */
     @Override
     public final void contextInitialized(final ServletContextEvent e) {
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        metrics.gauge("registration.ready", () -> state == State.REGISTERED || state == State.NOT_REQUIRED ? 1 : 0);
+        metrics.gauge("registration.attempts", attempts::get);
 
-        if (requiresRegistration ) {
-        // check if we are already registered..
+        if (!Boolean.TRUE.equals(requiresRegistration)) {
+            state = State.NOT_REQUIRED;
+            return;
+        }
+        state = State.PENDING;
+        client = new RegistrationClient(CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+        registrar = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "room-registration");
+            t.setDaemon(true);
+            return t;
+        });
+        registrar.execute(this::attempt);
+    }
+
+    // try to register, and if the map service could not be reached try again later
+    private void attempt() {
+        int attempt = attempts.incrementAndGet();
         try {
-            configureSSL();
-
-            HttpURLConnection con = isAlreadyRegistered();
-            if (con.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                //if the result was 200, then we found a room with this id & owner..
-                //which is either a previous registration by us, or another room with
-                //the same owner & roomname
-                //We won't register our room in this case, although we _could_ choose
-                //do do an update instead.. (we'd need to parse the json response, and
-                //collect the room id, then do a PUT request with our new data.. )
-                System.out.println("We are already registered, so updating with a PUT");
-                String json = getJSONResponse(con);
-                JsonArray array = Json.createReader(new StringReader(json)).readArray();
-                JsonString id = array.getJsonObject(0).getJsonString("_id");
-                register("PUT", registrationUrl + "/" + id.getString());
+            if (registerOnce()) {
+                state = State.REGISTERED;
+                System.out.println("Room registration complete after " + attempt + " attempt(s)");
             } else {
-                register("POST", registrationUrl);
+                state = State.FAILED;
+                System.out.println("Room Registration FAILED .. this room has NOT been registered");
             }
-        } catch (Exception ex) {
+            return;
+        } catch (IOException ex) {
+            System.out.println("Room registration attempt " + attempt + " failed : " + ex);
+        } catch (GeneralSecurityException | RuntimeException ex) {
             ex.printStackTrace();
-            throw new RuntimeException(ex);
+            state = State.FAILED;
+            System.out.println("Room Registration FAILED .. this room has NOT been registered");
+            return;
         }
+
+        if (attempt >= MAX_ATTEMPTS) {
+            state = State.FAILED;
+            System.out.println("Room Registration FAILED after " + attempt + " attempts .. this room has NOT been registered");
+            return;
         }
+        // back off, with some jitter so a fleet of rooms does not retry in step
+        long delay = Math.min(MAX_RETRY_MILLIS, FIRST_RETRY_MILLIS << Math.min(attempt - 1, 16));
+        delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+        System.out.println("Trying room registration again in " + delay + "ms");
+        registrar.schedule(this::attempt, delay, TimeUnit.MILLISECONDS);
     }
-    
-    private HttpURLConnection isAlreadyRegistered() throws Exception {
-     // build the query request.
-        String queryParams = "name=" + name + "&owner=" + userId;
-        
-        // build the complete query url..
-        System.out.println("Querying room registration using url " + registrationUrl);
 
-        URL u = new URL(registrationUrl + "?" + queryParams );
-        HttpURLConnection con = (HttpURLConnection) u.openConnection();
-        if(registrationUrl.startsWith("https://")) {
-            ((HttpsURLConnection)con).setHostnameVerifier(new TheNotVerySensibleHostnameVerifier());
+    /**
+     * @return true if registered, false if the map service turned us down
+     * @throws IOException
+     *             if it is worth trying again later
+     */
+    private boolean registerOnce() throws IOException, GeneralSecurityException {
+        if (signer == null) {
+            signer = new RequestSigner(key);
+        }
+        // the payload is hashed as it is written, and the same hash signs it
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(1024);
+        DigestOutputStream hashing = signer.hashing(payload);
+        try (JsonWriter writer = Json.createWriter(hashing)) {
+            writer.writeObject(getRegistration());
+        }
+        String fingerprint = RequestSigner.hashOf(hashing);
+        byte[] registrationPayload = payload.toByteArray();
+
+        // if we remember registering, there is no need to search for the room
+        String id = cache == null ? null : cache.getId(registrationUrl, userId);
+        if (id != null) {
+            if (fingerprint.equals(cache.getFingerprint())) {
+                // one cheap look at the room, in case the map service has lost it since
+                if (isRegistered(id)) {
+                    System.out.println("Registration of room " + id + " is unchanged, so not sending it again");
+                    return true;
+                }
+            } else {
+                System.out.println("Registration of room " + id + " has changed, so updating with a PUT");
+                RegistrationClient.Response response = register("PUT", roomUrl(id), registrationPayload, fingerprint);
+                if (response.getStatus() != 404) {
+                    return registered(response, id, fingerprint);
+                }
+            }
+            // the map service has forgotten us, find out where we stand
+            System.out.println("The map service no longer has room " + id + ", registering again");
+            cache.clear();
         }
-        con.setDoOutput(true);
-        con.setDoInput(true);
-        con.setRequestProperty("Content-Type", "application/json;");
-        con.setRequestProperty("Accept", "application/json,text/plain");
-        con.setRequestProperty("Method", "GET");
-        return con;
+
+        // check if we are already registered..
+        id = findRoomId();
+        RegistrationClient.Response response;
+        if (id != null) {
+            //if we found a room with this id & owner, it is either a previous
+            //registration by us, or another room with the same owner & roomname
+            System.out.println("We are already registered, so updating with a PUT");
+            response = register("PUT", roomUrl(id), registrationPayload, fingerprint);
+        } else {
+            response = register("POST", registrationUrl, registrationPayload, fingerprint);
+        }
+        return registered(response, id, fingerprint);
     }
-    
-    private void configureSSL() {
-        TrustManager[] trustManager = new TrustManager[] {new TheVeryTrustingTrustManager()};
-
-        // We don't want to worry about importing the game on cert into
-        // the jvm trust store.. so instead, we'll create an ssl config
-        // that no longer cares.
-        // This is handy for testing, but for production you'd probably
-        // want to go to the effort of setting up a truststore correctly.
-        SSLContext sslContext = null;
-        try {
-            sslContext = SSLContext.getInstance("SSL");
-            sslContext.init(null, trustManager, new java.security.SecureRandom());
-        } catch (NoSuchAlgorithmException ex) {
-            System.out.println("Error, unable to get algo SSL");
-        }catch (KeyManagementException ex) {
-            System.out.println("Key management exception!! ");
+
+    // remember a successful registration, so the next start can skip it
+    private boolean registered(RegistrationClient.Response response, String id, String fingerprint) {
+        if (!response.isSuccess()) {
+            System.out.println("Registration gave http code: " + response.getStatus());
+            // registration sends payload with info why registration
+            // failed.
+            System.out.println(response.getBody());
+            return false;
+        }
+        if (id == null) {
+            // a new registration, the map service has just given us our id
+            try {
+                id = Json.createReader(new StringReader(response.getBody())).readObject().getString("_id", null);
+            } catch (RuntimeException e) {
+                System.out.println("Unable to read the room id from the registration response : " + e);
+            }
+        }
+        if (cache != null && id != null) {
+            cache.store(registrationUrl, userId, id, fingerprint);
         }
+        return true;
+    }
 
-        HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
+    /**
+     * @return true if the map service still has the room with this _id
+     * @throws IOException
+     *             if it could not be reached, or asked us to try again later
+     */
+    private boolean isRegistered(String id) throws IOException {
+        RegistrationClient.Response response = client.get(roomUrl(id));
+        if (response.isRetryable()) {
+            throw new IOException("Room lookup gave http code " + response.getStatus());
+        }
+        return response.isSuccess();
     }
-    
-    private void register(String method, String registrationUrl) throws Exception {
+
+    // the map service url for one room, for looking it up and updating it
+    private String roomUrl(String id) throws UnsupportedEncodingException {
+        return registrationUrl + "/" + URLEncoder.encode(id, "UTF-8");
+    }
+
+    /**
+     * @return the _id of the room registered with our name and owner, or null
+     */
+    private String findRoomId() throws IOException {
+        // build the complete query url..
+        String url = registrationUrl + "?name=" + URLEncoder.encode(name, "UTF-8")
+                + "&owner=" + URLEncoder.encode(userId, "UTF-8");
+        System.out.println("Querying room registration using url " + registrationUrl);
+
+        RegistrationClient.Response response = client.get(url);
+        if (response.isRetryable()) {
+            throw new IOException("Room query gave http code " + response.getStatus());
+        }
+        if (response.getStatus() != 200) {
+            return null;
+        }
+        System.out.println("Response from server.");
+        System.out.println(response.getBody());
+        JsonArray array = Json.createReader(new StringReader(response.getBody())).readArray();
+        return array.isEmpty() ? null : array.getJsonObject(0).getString("_id");
+    }
+
+    /**
+     * @return what the map service said
+     * @throws IOException
+     *             if it could not be reached, or asked us to try again later
+     */
+    private RegistrationClient.Response register(String method, String registrationUrl, byte[] registrationPayload,
+            String bodyHash) throws IOException {
         System.out.println("Beginning registration.");
-        String registrationPayloadString = getRegistration();
 
         Instant now = Instant.now();
         String dateValue = now.toString();
 
-        String bodyHash = SecurityUtils.buildHash(registrationPayloadString);
-
         System.out.println("Building hmac with "+userId+dateValue+bodyHash);
-        String hmac = SecurityUtils.buildHmac(Arrays.asList(new String[] {
-                                   userId,
-                                   dateValue,
-                                   bodyHash
-                               }),key);
+        String hmac = signer.sign(userId, dateValue, bodyHash);
 
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("gameon-id", userId);
+        headers.put("gameon-date", dateValue);
+        headers.put("gameon-sig-body", bodyHash);
+        headers.put("gameon-signature", hmac);
 
         // build the complete registration url..
         System.out.println("Beginning registration using url " + registrationUrl);
-        URL u = new URL(registrationUrl);
-        HttpURLConnection con = (HttpURLConnection) u.openConnection();
-        if(registrationUrl.startsWith("https://")) {
-            ((HttpsURLConnection)con).setHostnameVerifier(new TheNotVerySensibleHostnameVerifier());
-        }
-        con.setDoOutput(true);
-        con.setDoInput(true);
-        con.setRequestProperty("Content-Type", "application/json;");
-        con.setRequestProperty("Accept", "application/json,text/plain");
-        con.setRequestProperty("Method", method);
-        con.setRequestProperty("gameon-id", userId);
-        con.setRequestProperty("gameon-date", dateValue);
-        con.setRequestProperty("gameon-sig-body", bodyHash);
-        con.setRequestProperty("gameon-signature", hmac);
-        con.setRequestMethod(method);
-        OutputStream os = con.getOutputStream();
-
-        os.write(registrationPayloadString.getBytes("UTF-8"));
-        os.close();
-
-        System.out.println("RegistrationPayload :\n "+registrationPayloadString);
-
-        int httpResult = con.getResponseCode();
-        if (httpResult == HttpURLConnection.HTTP_OK || httpResult == HttpURLConnection.HTTP_CREATED) {
+        System.out.println("RegistrationPayload :\n "+new String(registrationPayload, StandardCharsets.UTF_8));
+        RegistrationClient.Response response = client.send(method, registrationUrl, registrationPayload, headers);
+
+        if (response.isSuccess()) {
             System.out.println("Registration reports success.");
-            getJSONResponse(con);
+            System.out.println(response.getBody());
             // here we should remember the exits we're told about,
             // so we can
             // use them when the user does /go direction
             // But we're not dealing with exits here (yet)..
             // user's will have to /sos out of us .. (bad, but ok
             // for now)
-        } else {
-            System.out.println(
-                    "Registration gave http code: " + con.getResponseCode() + " " + con.getResponseMessage());
-            // registration sends payload with info why registration
-            // failed.
-            try (BufferedReader buffer = new BufferedReader(
-                    new InputStreamReader(con.getErrorStream(), "UTF-8"))) {
-                String response = buffer.lines().collect(Collectors.joining("\n"));
-                System.out.println(response);
-            }
-            System.out.println("Room Registration FAILED .. this room has NOT been registered");
-        }
-    }
-    
-    private String getJSONResponse(HttpURLConnection con) throws Exception {
-        try (BufferedReader buffer = new BufferedReader(
-                new InputStreamReader(con.getInputStream(), "UTF-8"))) {
-            String response = buffer.lines().collect(Collectors.joining("\n"));
-            System.out.println("Response from server.");
-            System.out.println(response);
-            return response;
+        } else if (response.isRetryable()) {
+            throw new IOException("Registration gave http code " + response.getStatus());
         }
+        return response;
     }
     
     //build the registration JSON for this room
-    private String getRegistration() {
+    private JsonObject getRegistration() {
         System.out.println("Websocket endpoint " + endPointUrl);
 
         JsonObjectBuilder registrationPayload = Json.createObjectBuilder();
@@ -301,13 +392,24 @@ public class RegistrationListener implements ServletContextListener {
         connInfo.add("target", endPointUrl);
         registrationPayload.add("connectionDetails", connInfo.build());
 
-        return registrationPayload.build().toString();
+        return registrationPayload.build();
     }
 
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
         // Here we could deregister, if we wanted.. we'd need to read the registration/query
         // response to cache the room id, so we could remove it as we shut down.
+        MetricsRegistry.getDefault().removeAll("registration.");
+        if (registrar != null) {
+            registrar.shutdownNow();
+        }
+        if (client != null) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                // it is going anyway
+            }
+        }
     }
 
 
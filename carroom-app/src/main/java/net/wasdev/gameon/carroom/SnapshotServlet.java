@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.logging.Level;
+
+import javax.naming.InitialContext;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.wasdev.gameon.render.Snapshot;
+import net.wasdev.gameon.security.RequestSigner;
+
+/**
+ * Takes pictures from the car and shows them as ASCII art, e.g.
+ * <code>curl http://localhost:9080/car/snapshot?columns=80</code>
+ *
+ * Pictures are only taken from the room's owner. They are signed the same way
+ * the room signs its registration: <code>gameon-id</code> is the ownerId,
+ * <code>gameon-date</code> the time in ISO-8601, <code>gameon-sig-body</code>
+ * the base64 SHA-256 of the picture, and <code>gameon-signature</code> the
+ * base64 HmacSHA256, keyed with the ownerKey, of those three values one after
+ * the other.
+ */
+@WebServlet("/snapshot")
+public class SnapshotServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    // the largest picture accepted
+    private static final int MAX_BYTES = 4 * 1024 * 1024;
+    // how far the signed date may be from our clock
+    private static final Duration MAX_CLOCK_SKEW = Duration.ofMinutes(5);
+
+    private String ownerId;
+    // null if there is no owner key, when no pictures are accepted
+    private RequestSigner signer;
+
+    @Override
+    public void init() throws ServletException {
+        ownerId = getJNDIEntry("ownerId");
+        String key = getJNDIEntry("ownerKey");
+        if (ownerId == null || key == null || key.isEmpty()) {
+            Log.log(Level.WARNING, this, "No ownerId and ownerKey, so the car's pictures will not be accepted");
+            return;
+        }
+        try {
+            signer = new RequestSigner(key);
+        } catch (GeneralSecurityException e) {
+            throw new ServletException("Unable to check the signatures on the car's pictures", e);
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (signer == null) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "This room does not accept pictures");
+            return;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream(Math.max(0, request.getContentLength()));
+        // hashed as it is read, for checking against gameon-sig-body
+        DigestOutputStream hashing = signer.hashing(body);
+        if (!readBody(request, hashing)) {
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Pictures must be under " + MAX_BYTES + " bytes");
+            return;
+        }
+        byte[] image = body.toByteArray();
+        if (!isSignedByOwner(request, RequestSigner.hashOf(hashing))) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Pictures must be signed by the room's owner");
+            return;
+        }
+        Snapshot snapshot;
+        try {
+            snapshot = CarCamera.getDefault().update(image);
+        } catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        Log.log(Log.Category.CAR, Level.INFO, this, "New snapshot {0}x{1}",
+                snapshot.getImage().getWidth(), snapshot.getImage().getHeight());
+        response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        int columns = CarCamera.DEFAULT_COLUMNS;
+        String param = request.getParameter("columns");
+        String art;
+        try {
+            if (param != null) {
+                columns = Integer.parseInt(param);
+            }
+            art = CarCamera.getDefault().view(columns);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "columns must be between " + CarCamera.MIN_COLUMNS + " and " + CarCamera.MAX_COLUMNS);
+            return;
+        }
+        if (art == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No picture from the car yet");
+            return;
+        }
+        response.setContentType("text/html");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.getWriter().write(art);
+    }
+
+    // check the gameon-* headers, before the picture is decoded
+    private boolean isSignedByOwner(HttpServletRequest request, String actualHash) {
+        String id = request.getHeader("gameon-id");
+        String date = request.getHeader("gameon-date");
+        String bodyHash = request.getHeader("gameon-sig-body");
+        String signature = request.getHeader("gameon-signature");
+        if (id == null || date == null || bodyHash == null || signature == null || !id.equals(ownerId)) {
+            return false;
+        }
+        try {
+            if (Duration.between(Instant.parse(date), Instant.now()).abs().compareTo(MAX_CLOCK_SKEW) > 0) {
+                return false;
+            }
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+        return equal(bodyHash, actualHash) && equal(signature, signer.sign(id, date, bodyHash));
+    }
+
+    // compare without giving away how much matched
+    private static boolean equal(String a, String b) {
+        return MessageDigest.isEqual(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String getJNDIEntry(String name) {
+        try {
+            return (String) new InitialContext().lookup(name);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // copy the request body out, or return false if it is too big
+    private static boolean readBody(HttpServletRequest request, OutputStream body) throws IOException {
+        if (request.getContentLengthLong() > MAX_BYTES) {
+            return false;
+        }
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        try (InputStream in = request.getInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                if (total > MAX_BYTES) {
+                    return false;
+                }
+                body.write(buffer, 0, read);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+
+/**
+ * Drives a real car over its WebSocket control endpoint.
+ *
+ * Instructions can be sent as binary frames (see {@link BinaryCarFrameCodec}).
+ * If the car closes the connection because it cannot accept them, every frame
+ * from then on is sent as JSON text.
+ */
+public class WebSocketCarDriver extends QueuedCarDriver {
+    private final CarConnection link;
+    private volatile boolean textOnly = false;
+
+    /**
+     * @param name
+     *            used in logs and thread names
+     * @param endpoint
+     *            the car's WebSocket URL
+     * @param listener
+     *            called with each message the car sends back
+     */
+    public WebSocketCarDriver(String name, URI endpoint, Consumer<String> listener) {
+        this(name, endpoint, CarFrameCodec.JSON, listener);
+    }
+
+    /**
+     * @param name
+     *            used in logs and thread names
+     * @param endpoint
+     *            the car's WebSocket URL
+     * @param codec
+     *            how instructions are encoded for the car
+     * @param listener
+     *            called with each message the car sends back
+     */
+    public WebSocketCarDriver(String name, URI endpoint, CarFrameCodec codec, Consumer<String> listener) {
+        super(name, codec);
+        this.link = new CarConnection(endpoint, message -> {
+            replied(message);
+            listener.accept(message);
+        }, this::closed);
+    }
+
+    @Override
+    protected void connect() {
+        link.start();
+    }
+
+    @Override
+    protected void disconnect() {
+        link.stop();
+    }
+
+    @Override
+    protected void registerMetrics(MetricsRegistry registry, String prefix) {
+        super.registerMetrics(registry, prefix);
+        registry.gauge(prefix + ".connected", () -> link.isReady() ? 1 : 0);
+        registry.gauge(prefix + ".connects", link::getConnectCount);
+        registry.gauge(prefix + ".disconnects", link::getDisconnectCount);
+        registry.gauge(prefix + ".failedConnects", link::getFailedConnectCount);
+    }
+
+    @Override
+    protected void transmit(CarFrame frame) throws IOException {
+        if (!frame.isBinary()) {
+            link.send(frame.getText());
+        } else if (textOnly) {
+            link.send(frame.getInstruction().toJSON());
+        } else {
+            link.send(frame.getBinary());
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return link.isReady();
+    }
+
+    public CarConnection getLink() {
+        return link;
+    }
+
+    /**
+     * @return true if the car has refused binary frames, so JSON is being sent
+     */
+    public boolean isTextOnly() {
+        return textOnly;
+    }
+
+    private void closed(CloseReason reason) {
+        if (!textOnly && reason.getCloseCode().getCode() == CloseCodes.CANNOT_ACCEPT.getCode()) {
+            textOnly = true;
+            Log.log(Level.WARNING, this, getName() + " cannot accept binary frames, falling back to JSON");
+        }
+    }
+}
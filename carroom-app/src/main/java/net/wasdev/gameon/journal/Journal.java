@@ -0,0 +1,352 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+
+/**
+ * An append-only record of what players told the room, what was sent to the
+ * cars and what the room said back, for auditing and for working out what
+ * happened after the fact. {@link JournalReader} reads it.
+ *
+ * Callers only put the record on a bounded queue, so a WebSocket thread never
+ * waits for the disk; if the queue is full the record is dropped and counted. A
+ * single writer thread copies records into a memory-mapped segment file, and
+ * starts a new segment when the current one is full. Only so many segments are
+ * kept, if asked, and the oldest are deleted as new ones are started.
+ *
+ * Each record in a segment is laid out as
+ *
+ * <pre>
+ * int    length of what follows
+ * byte   type, see {@link Type}
+ * long   time, in milliseconds since the epoch
+ * short  key length, then the key in UTF-8
+ *        the text in UTF-8, to the end of the record
+ * </pre>
+ *
+ * A length of zero is the end of what has been written so far, and -1 means the
+ * rest of the segment is unused and the journal carries on in the next one. The
+ * length is written after the rest of the record, so a reader never sees half a
+ * record.
+ */
+public class Journal implements Closeable {
+
+    /**
+     * What a record is, and what its key and text hold.
+     */
+    public enum Type {
+        /** A <code>room</code> command, keyed by the user id. */
+        COMMAND(1),
+        /** A pulse of an instruction sent to a car, keyed by the car's name. */
+        PULSE(2),
+        /** An event sent by the room, keyed by the user id it is for, or *. */
+        EVENT(3);
+
+        private final byte code;
+
+        Type(int code) {
+            this.code = (byte) code;
+        }
+
+        public byte getCode() {
+            return code;
+        }
+
+        public static Type fromCode(byte code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".log";
+    // type, time and key length
+    static final int HEADER_BYTES = 1 + 8 + 2;
+    static final int END_OF_SEGMENT = -1;
+
+    private static volatile Journal current = null;
+
+    private static final class Entry {
+        final Type type;
+        final long time;
+        final String key;
+        final String text;
+
+        Entry(Type type, long time, String key, String text) {
+            this.type = type;
+            this.time = time;
+            this.key = key;
+            this.text = text;
+        }
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int keepSegments;
+    private final BlockingQueue<Entry> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentNumber;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong segments = new AtomicLong();
+
+    /**
+     * Start a journal in a directory that keeps every segment. Earlier segments
+     * are left alone, and a new one is started after the last of them.
+     *
+     * @param dir
+     *            where the segment files go, created if need be
+     * @param segmentBytes
+     *            the size of each segment file
+     * @param queueSize
+     *            how many records can wait for the writer before they are dropped
+     */
+    public Journal(Path dir, int segmentBytes, int queueSize) throws IOException {
+        this(dir, segmentBytes, queueSize, 0);
+    }
+
+    /**
+     * Start a journal in a directory. A new segment is started after the last of
+     * the earlier ones.
+     *
+     * @param dir
+     *            where the segment files go, created if need be
+     * @param segmentBytes
+     *            the size of each segment file
+     * @param queueSize
+     *            how many records can wait for the writer before they are dropped
+     * @param keepSegments
+     *            how many segments to keep, including the one being written, or 0
+     *            to keep them all
+     * @throws IllegalArgumentException
+     *             if a segment could not hold a record, or keepSegments is negative
+     */
+    public Journal(Path dir, int segmentBytes, int queueSize, int keepSegments) throws IOException {
+        // room for the length, the header, and the marker after the record
+        if (segmentBytes < 4 + HEADER_BYTES + 4) {
+            throw new IllegalArgumentException("Journal segments are too small to hold a record : " + segmentBytes);
+        }
+        if (keepSegments < 0) {
+            throw new IllegalArgumentException("The number of journal segments to keep cannot be negative : " + keepSegments);
+        }
+        this.dir = Files.createDirectories(dir);
+        this.segmentBytes = segmentBytes;
+        this.keepSegments = keepSegments;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.segmentNumber = lastSegment(dir);
+        roll();
+        this.writer = new Thread(this::write, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Make this the journal that {@link #record} writes to, or stop recording
+     * with null.
+     */
+    public static void setDefault(Journal journal) {
+        current = journal;
+    }
+
+    /**
+     * Add a record to the room's journal, if it has one. Never blocks.
+     */
+    public static void record(Type type, String key, String text) {
+        Journal journal = current;
+        if (journal != null) {
+            journal.append(type, key, text);
+        }
+    }
+
+    /**
+     * Queue a record for the writer. Never blocks.
+     *
+     * @return false if the queue was full and the record was dropped
+     */
+    public boolean append(Type type, String key, String text) {
+        if (running && queue.offer(new Entry(type, System.currentTimeMillis(), key == null ? "" : key,
+                text == null ? "" : text))) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Publish the journal's counters.
+     *
+     * @param prefix
+     *            put in front of every metric name, e.g. "journal"
+     */
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + ".written", written::get);
+        registry.gauge(prefix + ".dropped", dropped::get);
+        registry.gauge(prefix + ".segments", segments::get);
+        registry.gauge(prefix + ".queueDepth", queue::size);
+    }
+
+    /**
+     * Write out whatever is queued, then stop.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    // the writer thread, until closed and the queue is empty
+    private void write() {
+        try {
+            while (running || !queue.isEmpty()) {
+                Entry entry = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (entry != null) {
+                    write(entry);
+                }
+            }
+        } catch (InterruptedException e) {
+            // closing
+        } catch (IOException e) {
+            System.out.println("Journal stopped, unable to write to " + dir + " : " + e);
+            running = false;
+        } finally {
+            try {
+                segment.force();
+                channel.close();
+            } catch (IOException e) {
+                // nothing more can be done
+            }
+        }
+    }
+
+    private void write(Entry entry) throws IOException {
+        byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+        byte[] text = entry.text.getBytes(StandardCharsets.UTF_8);
+        if (key.length > 0xffff) {
+            dropped.incrementAndGet();
+            return;
+        }
+        int length = HEADER_BYTES + key.length + text.length;
+        // room for the length, the record and the marker after it
+        if (length + 8 > segmentBytes) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (segment.remaining() < length + 8) {
+            segment.putInt(END_OF_SEGMENT);
+            roll();
+        }
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.put(entry.type.getCode());
+        segment.putLong(entry.time);
+        segment.putShort((short) key.length);
+        segment.put(key);
+        segment.put(text);
+        segment.putInt(start, length);
+        written.incrementAndGet();
+    }
+
+    // finish the current segment, if there is one, and start the next
+    private void roll() throws IOException {
+        if (channel != null) {
+            segment.force();
+            channel.close();
+        }
+        segmentNumber++;
+        Path file = dir.resolve(segmentName(segmentNumber));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segments.incrementAndGet();
+        if (keepSegments > 0) {
+            deleteBefore(segmentNumber - keepSegments + 1);
+        }
+    }
+
+    // delete the segments older than the one given, carrying on writing if that fails
+    private void deleteBefore(long oldestKept) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                long number = segmentNumber(file);
+                if (number >= 0 && number < oldestKept) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to delete old journal segments in " + dir + " : " + e);
+        }
+    }
+
+    static String segmentName(long number) {
+        return String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @return the number of the segment file name, or -1 if it is not a segment
+     */
+    static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long lastSegment(Path dir) throws IOException {
+        long last = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                last = Math.max(last, segmentNumber(file));
+            }
+        }
+        return last;
+    }
+}
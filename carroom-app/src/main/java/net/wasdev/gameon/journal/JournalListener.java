@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.journal;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import javax.naming.InitialContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+
+/**
+ * Opens the room's {@link Journal} while the application is running, in the
+ * directory given by the <code>journalDir</code> JNDI entry. There is no journal
+ * when that is not set, or set to <code>none</code>. Each segment file is
+ * <code>journalSegmentMB</code> megabytes, up to 2047, and only the newest
+ * <code>journalSegments</code> are kept, or all of them if that is 0.
+ */
+@WebListener
+public class JournalListener implements ServletContextListener {
+    private static final int QUEUE_SIZE = 65536;
+    // a segment is mapped into one buffer, which can be at most 2GB less a byte
+    private static final int MAX_SEGMENT_MB = Integer.MAX_VALUE / (1024 * 1024);
+
+    private Journal journal;
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        String dir = getJNDIEntry("journalDir");
+        if (dir == null || dir.isEmpty() || "none".equalsIgnoreCase(dir)) {
+            System.out.println("No journal directory set, the room will not keep a journal");
+            return;
+        }
+        int segmentMB = getIntJNDIEntry("journalSegmentMB", 64);
+        if (segmentMB < 1 || segmentMB > MAX_SEGMENT_MB) {
+            throw new IllegalArgumentException(
+                    "journalSegmentMB must be between 1 and " + MAX_SEGMENT_MB + " : " + segmentMB);
+        }
+        int keepSegments = getIntJNDIEntry("journalSegments", 16);
+        if (keepSegments < 0) {
+            throw new IllegalArgumentException("journalSegments must be 0, to keep them all, or more : " + keepSegments);
+        }
+        long segmentBytes = segmentMB * 1024L * 1024L;
+        try {
+            journal = new Journal(Paths.get(dir), (int) segmentBytes, QUEUE_SIZE, keepSegments);
+            journal.registerMetrics(MetricsRegistry.getDefault(), "journal");
+            Journal.setDefault(journal);
+            System.out.println("Keeping a journal in " + journal.getDirectory());
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Unable to start the journal in " + dir + " : " + e);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (journal == null) {
+            return;
+        }
+        Journal.setDefault(null);
+        MetricsRegistry.getDefault().removeAll("journal.");
+        try {
+            journal.close();
+        } catch (IOException e) {
+            // it is going anyway
+        }
+    }
+
+    private static int getIntJNDIEntry(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(getJNDIEntry(name));
+        } catch (NumberFormatException e) {
+            System.out.println("Using default of " + defaultValue + " for " + name);
+            return defaultValue;
+        }
+    }
+
+    private static String getJNDIEntry(String name) {
+        try {
+            return String.valueOf(new InitialContext().lookup(name));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import net.wasdev.gameon.journal.Journal.Type;
+
+/**
+ * Reads the segments written by {@link Journal}, oldest first, either once to
+ * the end or following it as the room writes more.
+ *
+ * Run it against a journal directory, with optional filters, e.g.
+ *
+ * <pre>
+ * java net.wasdev.gameon.journal.JournalReader dir=journal type=COMMAND key=dummy.DevUser follow=true
+ * </pre>
+ */
+public class JournalReader {
+
+    /**
+     * One record from the journal.
+     */
+    public static final class Record {
+        private final Type type;
+        private final long time;
+        private final String key;
+        private final String text;
+
+        Record(Type type, long time, String key, String text) {
+            this.type = type;
+            this.time = time;
+            this.key = key;
+            this.text = text;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return Instant.ofEpochMilli(time) + " " + type + " " + key + " : " + text;
+        }
+    }
+
+    /**
+     * Told about each record read.
+     */
+    public interface Handler {
+        void record(Record record);
+    }
+
+    private static final long FOLLOW_POLL_MILLIS = 100;
+
+    private final Path dir;
+    private final Predicate<Record> filter;
+
+    /**
+     * @param dir
+     *            the journal directory
+     * @param filter
+     *            which records to pass on
+     */
+    public JournalReader(Path dir, Predicate<Record> filter) {
+        this.dir = dir;
+        this.filter = filter;
+    }
+
+    /**
+     * Read every record written so far.
+     *
+     * @return how many records were passed on
+     */
+    public long scan(Handler handler) throws IOException {
+        long count = 0;
+        for (Path file : segments(0)) {
+            ByteBuffer segment = map(file);
+            while (true) {
+                Record record = next(segment);
+                if (record == null) {
+                    break;
+                }
+                count += pass(record, handler);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read every record written so far, then wait for more until interrupted.
+     */
+    public void follow(Handler handler) throws IOException, InterruptedException {
+        long number = 0;
+        ByteBuffer segment = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            if (segment == null) {
+                List<Path> files = segments(number + 1);
+                if (files.isEmpty()) {
+                    Thread.sleep(FOLLOW_POLL_MILLIS);
+                    continue;
+                }
+                number = Journal.segmentNumber(files.get(0));
+                segment = map(files.get(0));
+            }
+            Record record = next(segment);
+            if (record != null) {
+                pass(record, handler);
+            } else if (segment.remaining() < 4 || segment.getInt(segment.position()) == Journal.END_OF_SEGMENT
+                    || !segments(number + 1).isEmpty()) {
+                // finished with, or abandoned by a writer that has been restarted
+                segment = null;
+            } else {
+                Thread.sleep(FOLLOW_POLL_MILLIS);
+            }
+        }
+    }
+
+    private int pass(Record record, Handler handler) {
+        if (filter.test(record)) {
+            handler.record(record);
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the next record in the segment, or null if there is none yet, leaving
+     *         the position at the end marker
+     */
+    private static Record next(ByteBuffer segment) {
+        int start = segment.position();
+        if (segment.remaining() < 4) {
+            return null;
+        }
+        int length = segment.getInt(start);
+        if (length < Journal.HEADER_BYTES || length > segment.remaining() - 4) {
+            return null;
+        }
+        segment.position(start + 4);
+        Type type = Type.fromCode(segment.get());
+        long time = segment.getLong();
+        byte[] key = new byte[segment.getShort() & 0xffff];
+        segment.get(key);
+        byte[] text = new byte[length - Journal.HEADER_BYTES - key.length];
+        segment.get(text);
+        return new Record(type, time, new String(key, StandardCharsets.UTF_8), new String(text, StandardCharsets.UTF_8));
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // the segment files numbered from the one given, in order
+    private List<Path> segments(long from) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> all = Files.newDirectoryStream(dir)) {
+            for (Path file : all) {
+                if (Journal.segmentNumber(file) >= from) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort((a, b) -> Long.compare(Journal.segmentNumber(a), Journal.segmentNumber(b)));
+        return files;
+    }
+
+    /**
+     * Print the journal.
+     *
+     * @param args
+     *            name=value settings: <code>dir</code> the journal directory,
+     *            <code>type</code> only records of this type,
+     *            <code>key</code> only records with this key, and
+     *            <code>follow=true</code> to keep printing as records are added
+     */
+    public static void main(String[] args) throws Exception {
+        String dir = "journal";
+        Type type = null;
+        String key = null;
+        boolean follow = false;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? "" : arg.substring(eq + 1);
+            switch (name) {
+                case "dir":
+                    dir = value;
+                    break;
+                case "type":
+                    type = Type.valueOf(value.toUpperCase());
+                    break;
+                case "key":
+                    key = value;
+                    break;
+                case "follow":
+                    follow = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    System.err.println("Unknown setting " + arg + ", expected dir, type, key or follow");
+                    System.exit(1);
+            }
+        }
+        Type wantedType = type;
+        String wantedKey = key;
+        JournalReader reader = new JournalReader(Paths.get(dir),
+                r -> (wantedType == null || r.getType() == wantedType) && (wantedKey == null || wantedKey.equals(r.getKey())));
+        if (follow) {
+            reader.follow(System.out::println);
+        } else {
+            long count = reader.scan(System.out::println);
+            System.err.println(count + " records");
+        }
+    }
+}
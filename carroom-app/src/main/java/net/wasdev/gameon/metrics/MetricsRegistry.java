@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The numbers the room exposes for sizing and alerting, by name. They can be
+ * read over HTTP from {@link MetricsServlet} and over JMX from
+ * {@link MetricsMBean}.
+ *
+ * A gauge is read when the metrics are, so it costs nothing until then. A
+ * {@link Timer} is reported as several values, e.g. <code>fanout.send.count</code>
+ * and <code>fanout.send.p99Micros</code>.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    // each value is either a Timer or a LongSupplier
+    private final Map<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+    /**
+     * @return the registry shared by the whole application
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Add a value that is read whenever the metrics are. Replaces any existing
+     * metric with the same name.
+     */
+    public void gauge(String name, LongSupplier value) {
+        metrics.put(name, value);
+    }
+
+    /**
+     * Add a timer that already exists. Replaces any existing metric with the
+     * same name.
+     */
+    public void register(String name, Timer timer) {
+        metrics.put(name, timer);
+    }
+
+    /**
+     * @return the timer with this name, created if there is not one already
+     */
+    public Timer timer(String name) {
+        Object metric = metrics.computeIfAbsent(name, n -> new Timer());
+        if (!(metric instanceof Timer)) {
+            throw new IllegalArgumentException(name + " is already registered as a gauge");
+        }
+        return (Timer) metric;
+    }
+
+    /**
+     * Remove every metric whose name starts with the prefix.
+     */
+    public void removeAll(String prefix) {
+        metrics.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    /**
+     * @return the current value of every metric, sorted by name
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : metrics.entrySet()) {
+            String name = e.getKey();
+            Object metric = e.getValue();
+            if (metric instanceof Timer) {
+                Timer timer = (Timer) metric;
+                values.put(name + ".count", timer.getCount());
+                values.put(name + ".meanMicros", timer.getMeanMicros());
+                values.put(name + ".p50Micros", timer.getPercentileMicros(50));
+                values.put(name + ".p99Micros", timer.getPercentileMicros(99));
+                values.put(name + ".p999Micros", timer.getPercentileMicros(99.9));
+                values.put(name + ".maxMicros", timer.getMaxMicros());
+            } else {
+                try {
+                    values.put(name, ((LongSupplier) metric).getAsLong());
+                } catch (RuntimeException ex) {
+                    // a gauge whose owner has gone away, leave it out
+                }
+            }
+        }
+        return values;
+    }
+}
@@ -15,13 +15,11 @@
  *******************************************************************************/
 package net.wasdev.gameon.protocol;
 
-import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
@@ -29,29 +27,57 @@ import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.websocket.Session;
 
+import net.wasdev.gameon.journal.Journal;
+
+/**
+ * Builds the events sent back to the mediator.
+ *
+ * Each event is encoded once into an {@link EventFrame}, and that one frame is
+ * queued for every recipient session.
+ */
 public class EventBuilder {
     private final static String FULLNAME = "fullName";
     private final static String DESCRIPTION = "description";
     private final static String LOCATION = "location";
     private final static String NAME = "name";
-    
-    private static final AtomicInteger counter = new AtomicInteger(0);
 
-    private static void generateEvent(Session session, JsonObject content, String userID, boolean selfOnly, int bookmark)
-            throws IOException {
-        JsonObjectBuilder response = Json.createObjectBuilder();
-        response.add("type", "event");
-        response.add("content", content);
-        response.add("bookmark", bookmark);
+    private static volatile SessionFanout fanout;
+
+    /**
+     * Share the room's fan-out engine, so events and other room messages go through
+     * the same per-session queues. This must be called before any event is sent.
+     */
+    public static void setFanout(SessionFanout roomFanout) {
+        fanout = roomFanout;
+    }
+
+    // the room's fan-out, never one with settings the room did not ask for
+    private static SessionFanout fanout() {
+        SessionFanout roomFanout = fanout;
+        if (roomFanout == null) {
+            throw new IllegalStateException("EventBuilder.setFanout has not been called");
+        }
+        return roomFanout;
+    }
+
+    private static volatile ReplayBuffer replay = new ReplayBuffer(1024);
 
-        String msg = "player," + (selfOnly ? userID : "*") + "," + response.build().toString();
-        session.getBasicRemote().sendText(msg);
+    /**
+     * Keep the room's recent events in this buffer instead.
+     */
+    public static void setReplayBuffer(ReplayBuffer roomReplay) {
+        replay = roomReplay;
+    }
+
+    public static ReplayBuffer getReplayBuffer() {
+        return replay;
     }
 
     public static void playerEvent(Collection<Session> activeSessions, String senderId, String selfMessage, String othersMessage) {
-        // System.out.println("Player message :: from("+senderId+")
-        // onlyForSelf("+String.valueOf(selfMessage)+")
-        // others("+String.valueOf(othersMessage)+")");
+        playerFrame(senderId, selfMessage, othersMessage).sendTo(fanout(), activeSessions);
+    }
+
+    public static EventFrame playerFrame(String senderId, String selfMessage, String othersMessage) {
         JsonObjectBuilder content = Json.createObjectBuilder();
         boolean selfOnly = true;
         if (othersMessage != null && othersMessage.length() > 0) {
@@ -61,41 +87,26 @@ public class EventBuilder {
         if (selfMessage != null && selfMessage.length() > 0) {
             content.add(senderId, selfMessage);
         }
-        JsonObject json = content.build();
-        int count = counter.incrementAndGet();
-        for (Session session : activeSessions) {
-            try {
-                generateEvent(session, json, senderId, selfOnly, count);
-            } catch (IOException io) {
-                throw new RuntimeException(io);
-            }
-        }
+        return eventFrame(selfOnly ? senderId : "*", content.build());
     }
 
-    private static void generateRoomEvent(Session session, JsonObject content, int bookmark) throws IOException {
-        JsonObjectBuilder response = Json.createObjectBuilder();
-        response.add("type", "event");
-        response.add("content", content);
-        response.add("bookmark", bookmark);
-
-        String msg = "player,*," + response.build().toString();
-
-        session.getBasicRemote().sendText(msg);
+    public static void roomEvent(Collection<Session> activeSessions, String s) {
+        roomFrame(s).sendTo(fanout(), activeSessions);
     }
 
-    public static void roomEvent(Collection<Session> activeSessions, String s) {
-        // System.out.println("Message sent to everyone :: "+s);
+    public static EventFrame roomFrame(String s) {
         JsonObjectBuilder content = Json.createObjectBuilder();
         content.add("*", s);
-        JsonObject json = content.build();
-        int count = counter.incrementAndGet();
-        for (Session session : activeSessions) {
-            try {
-                generateRoomEvent(session, json, count);
-            } catch (IOException io) {
-                throw new RuntimeException(io);
-            }
-        }
+        return eventFrame("*", content.build());
+    }
+
+    private static EventFrame eventFrame(String target, JsonObject content) {
+        JsonObjectBuilder response = Json.createObjectBuilder();
+        response.add("type", "event");
+        response.add("content", content);
+        long bookmark = nextBookmark();
+        response.add("bookmark", bookmark);
+        return sequenced(bookmark, target, new EventFrame("player", target, response.build(), null));
     }
 
     //convenience method
@@ -104,24 +115,40 @@ public class EventBuilder {
     }
     
     public static void chatEvent(Collection<Session> activeSessions, String username, String msg) {
+        chatFrame(username, msg).sendTo(fanout(), activeSessions);
+    }
+
+    public static EventFrame chatFrame(String username, String msg) {
         JsonObjectBuilder content = Json.createObjectBuilder();
         content.add("type", "chat");
         content.add("username", username);
         content.add("content", msg);
-        content.add("bookmark", counter.incrementAndGet());
-        JsonObject json = content.build();
-        for (Session session : activeSessions) {
-            try {
-                String cmsg = "player,*," + json.toString();
-                session.getBasicRemote().sendText(cmsg);
-            } catch (IOException io) {
-                throw new RuntimeException(io);
-            }
-        }
+        long bookmark = nextBookmark();
+        content.add("bookmark", bookmark);
+        return sequenced(bookmark, "*", new EventFrame("player", "*", content.build(), null));
     }
 
     public static void locationEvent(Collection<Session> activeSessions, String senderId, String roomId, String roomName, String roomDescription, Map<String,String> exits,
             List<String> objects, List<String> inventory, Map<String,String> commands) {
+        locationFrame(senderId, roomId, roomName, roomDescription, exits, objects, inventory, commands).sendTo(fanout(), activeSessions);
+    }
+
+    public static EventFrame locationFrame(String senderId, String roomId, String roomName, String roomDescription, Map<String,String> exits,
+            List<String> objects, List<String> inventory, Map<String,String> commands) {
+        JsonObjectBuilder content = locationContent(roomId, roomName, roomDescription, exits, objects, inventory, commands);
+        long bookmark = nextBookmark();
+        content.add("bookmark", bookmark);
+
+        // a newer description of the room supersedes one still waiting to be sent
+        return sequenced(bookmark, senderId, new EventFrame("player", senderId, content.build(), LOCATION));
+    }
+
+    /**
+     * Everything in a location event apart from the bookmark, which is always
+     * the last field so that {@link LocationFrameCache} can splice it in.
+     */
+    static JsonObjectBuilder locationContent(String roomId, String roomName, String roomDescription, Map<String,String> exits,
+            List<String> objects, List<String> inventory, Map<String,String> commands) {
         JsonObjectBuilder content = Json.createObjectBuilder();
         content.add("type", LOCATION);
         content.add(NAME, roomId);
@@ -151,34 +178,32 @@ public class EventBuilder {
             objs.add(o);
         }
         content.add("objects", objs.build());
-        content.add("bookmark", counter.incrementAndGet());
-
-        JsonObject json = content.build();
-        for (Session session : activeSessions) {
-            try {
-                String lmsg = "player," + senderId + "," + json.toString();
-                session.getBasicRemote().sendText(lmsg);
-            } catch (IOException io) {
-                throw new RuntimeException(io);
-            }
-        }
+        return content;
+    }
+
+    static long nextBookmark() {
+        return EventSequence.next();
+    }
+
+    // remember an event, so it can be sent again to a player who missed it
+    static EventFrame sequenced(long bookmark, String target, EventFrame frame) {
+        replay.add(bookmark, target, frame);
+        Journal.record(Journal.Type.EVENT, target, frame.getText());
+        return frame;
     }
 
     public static void exitEvent(Collection<Session> activeSessions, String senderId, String message, String exitID, String exitJson) {
+        exitFrame(senderId, message, exitID).sendTo(fanout(), activeSessions);
+    }
+
+    public static EventFrame exitFrame(String senderId, String message, String exitID) {
         JsonObjectBuilder content = Json.createObjectBuilder();
         content.add("type", "exit");
         content.add("exitId", exitID);
         content.add("content", message);
-        content.add("bookmark", counter.incrementAndGet());
-        JsonObject json = content.build();
-        for (Session session : activeSessions) {
-            try {
-                String emsg = "playerLocation," + senderId + "," + json.toString();
-                session.getBasicRemote().sendText(emsg);
-            } catch (IOException io) {
-                throw new RuntimeException(io);
-            }
-        }
+        long bookmark = nextBookmark();
+        content.add("bookmark", bookmark);
+        return sequenced(bookmark, senderId, new EventFrame("playerLocation", senderId, content.build(), null));
     }
 
 
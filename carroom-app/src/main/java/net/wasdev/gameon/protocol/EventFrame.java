@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+import java.util.Collection;
+
+import javax.json.JsonObject;
+import javax.websocket.Session;
+
+/**
+ * An outbound event that has already been encoded into its wire form, e.g.
+ * <code>player,*,{"type":"event",...}</code>.
+ *
+ * Frames are immutable, so one frame is built per event and the same instance
+ * is handed to every recipient.
+ */
+public final class EventFrame {
+    private final String text;
+    private final String coalesceKey;
+
+    EventFrame(String routing, String target, JsonObject json, String coalesceKey) {
+        this(routing + "," + target + "," + json.toString(), coalesceKey);
+    }
+
+    EventFrame(String text, String coalesceKey) {
+        this.text = text;
+        this.coalesceKey = coalesceKey;
+    }
+
+    /**
+     * @return the complete frame, routing prefix included
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the key used to merge this frame with an older queued one of the same
+     *         kind, or null if it must always be delivered
+     */
+    public String getCoalesceKey() {
+        return coalesceKey;
+    }
+
+    public void sendTo(SessionFanout fanout, Session session) {
+        fanout.send(session, text, coalesceKey);
+    }
+
+    public void sendTo(SessionFanout fanout, Collection<Session> sessions) {
+        fanout.broadcast(sessions, text, coalesceKey);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
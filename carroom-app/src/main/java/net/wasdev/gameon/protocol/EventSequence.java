@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the bookmark for every event the room sends, whichever part of the
+ * room builds it, so bookmarks are unique and only ever go up.
+ *
+ * The sequence starts from the clock (in microseconds since the epoch) rather
+ * than zero, so a restarted room carries on above the bookmarks it sent before,
+ * and stays well within the range a JavaScript client can hold exactly.
+ */
+public final class EventSequence {
+    private static final AtomicLong last = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private EventSequence() {
+    }
+
+    /**
+     * @return the bookmark for a new event
+     */
+    public static long next() {
+        return last.incrementAndGet();
+    }
+
+    /**
+     * @return the most recent bookmark handed out
+     */
+    public static long current() {
+        return last.get();
+    }
+}
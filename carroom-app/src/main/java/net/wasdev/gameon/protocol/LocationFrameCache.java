@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the room description part of a location event pre-rendered, so that a
+ * <code>/look</code> only has to add the player's routing and a bookmark.
+ *
+ * The exits, objects, pockets and commands are read from the collections passed
+ * in when the frame is next needed. Whoever changes those collections must call
+ * {@link #invalidate()} afterwards.
+ */
+public class LocationFrameCache {
+    private final static String LOCATION = "location";
+    private final static String BOOKMARK_FIELD = ",\"bookmark\":";
+
+    private final String roomId;
+    private final String roomName;
+    private final String roomDescription;
+    private final Map<String, String> exits;
+    private final List<String> objects;
+    private final List<String> inventory;
+    private final Map<String, String> commands;
+
+    // the location json, up to and including the bookmark field name
+    private volatile String body = null;
+
+    public LocationFrameCache(String roomId, String roomName, String roomDescription, Map<String, String> exits,
+            List<String> objects, List<String> inventory, Map<String, String> commands) {
+        this.roomId = roomId;
+        this.roomName = roomName;
+        this.roomDescription = roomDescription;
+        this.exits = exits;
+        this.objects = objects;
+        this.inventory = inventory;
+        this.commands = commands;
+    }
+
+    /**
+     * Discard the pre-rendered description, it is rebuilt on the next request.
+     */
+    public synchronized void invalidate() {
+        body = null;
+    }
+
+    /**
+     * Build the location event for a single player.
+     *
+     * @param senderId
+     *            the player the event is routed to
+     * @return a frame equivalent to {@link EventBuilder#locationFrame}
+     */
+    public EventFrame frameFor(String senderId) {
+        String json = getBody();
+        long bookmark = EventBuilder.nextBookmark();
+        StringBuilder frame = new StringBuilder(json.length() + senderId.length() + 20);
+        frame.append("player,").append(senderId).append(',').append(json).append(bookmark).append('}');
+        return EventBuilder.sequenced(bookmark, senderId, new EventFrame(frame.toString(), LOCATION));
+    }
+
+    private String getBody() {
+        String current = body;
+        return current != null ? current : render();
+    }
+
+    private synchronized String render() {
+        if (body == null) {
+            String json = EventBuilder.locationContent(roomId, roomName, roomDescription, exits, objects, inventory, commands)
+                    .build().toString();
+            // drop the closing brace, the bookmark goes back in its place
+            body = json.substring(0, json.length() - 1) + BOOKMARK_FIELD;
+        }
+        return body;
+    }
+}
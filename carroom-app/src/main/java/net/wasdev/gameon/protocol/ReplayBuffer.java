@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+
+/**
+ * The most recent events sent by the room, kept by bookmark so a player who
+ * reconnects with the last bookmark they saw can be sent what they missed.
+ *
+ * Each bookmark has a fixed slot in a ring, so recording an event is a single
+ * write and old events are overwritten without any clean up. A reader checks
+ * the bookmark in each slot, so it never mistakes a newer event for the one it
+ * wanted.
+ */
+public class ReplayBuffer {
+
+    private static final class Entry {
+        final long bookmark;
+        final String target;
+        final EventFrame frame;
+
+        Entry(long bookmark, String target, EventFrame frame) {
+            this.bookmark = bookmark;
+            this.target = target;
+            this.frame = frame;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong tooOld = new AtomicLong();
+
+    /**
+     * @param capacity
+     *            how many events to keep, rounded up to a power of two
+     */
+    public ReplayBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Remember an event that has just been sent.
+     *
+     * @param bookmark
+     *            from {@link EventSequence#next()}
+     * @param target
+     *            the user id the event was for, or * for everyone in the room
+     */
+    public void add(long bookmark, String target, EventFrame frame) {
+        slots.set((int) (bookmark & mask), new Entry(bookmark, target, frame));
+    }
+
+    /**
+     * The events a player has missed, oldest first.
+     *
+     * @param bookmark
+     *            the last bookmark the player saw
+     * @param userId
+     *            the player, only events for them or for everyone are returned
+     * @return the missed events, or null if some of them are no longer held and
+     *         the player has to be brought up to date another way
+     */
+    public List<EventFrame> since(long bookmark, String userId) {
+        long last = EventSequence.current();
+        if (bookmark > last || last - bookmark > slots.length()) {
+            tooOld.incrementAndGet();
+            return null;
+        }
+        List<EventFrame> missed = new ArrayList<>();
+        for (long b = bookmark + 1; b <= last; b++) {
+            Entry entry = slots.get((int) (b & mask));
+            if (entry == null || entry.bookmark < b) {
+                // not recorded, or not recorded yet
+                continue;
+            }
+            if (entry.bookmark > b) {
+                // overwritten while we were reading
+                tooOld.incrementAndGet();
+                return null;
+            }
+            if ("*".equals(entry.target) || userId.equals(entry.target)) {
+                missed.add(entry.frame);
+            }
+        }
+        replayed.addAndGet(missed.size());
+        return missed;
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * Publish how much has been replayed.
+     *
+     * @param prefix
+     *            put in front of every metric name, e.g. "replay"
+     */
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + ".capacity", this::getCapacity);
+        registry.gauge(prefix + ".replayed", replayed::get);
+        registry.gauge(prefix + ".tooOld", tooOld::get);
+    }
+}
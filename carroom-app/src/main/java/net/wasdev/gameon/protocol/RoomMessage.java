@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+/**
+ * The parts of an inbound mediator message that the room acts on.
+ *
+ * Instances are owned by {@link RoomMessageDecoder} and reused for every message
+ * decoded on the same thread, so they must not be kept once the message has
+ * been handled.
+ */
+public final class RoomMessage {
+
+    public enum Type {
+        /** <code>roomHello,&lt;roomId&gt;,{...}</code> */
+        HELLO,
+        /** <code>room,&lt;roomId&gt;,{...}</code> */
+        ROOM,
+        /** <code>roomGoodbye,&lt;roomId&gt;,{...}</code> */
+        GOODBYE,
+        /** Anything else, which the room ignores. */
+        UNKNOWN;
+    }
+
+    private Type type;
+    private String userId;
+    private String username;
+    private String content;
+    private String bookmark;
+
+    RoomMessage() {
+    }
+
+    void reset(Type type) {
+        this.type = type;
+        this.userId = null;
+        this.username = null;
+        this.content = null;
+        this.bookmark = null;
+    }
+
+    void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    void setUsername(String username) {
+        this.username = username;
+    }
+
+    void setContent(String content) {
+        this.content = content;
+    }
+
+    void setBookmark(String bookmark) {
+        this.bookmark = bookmark;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return the command or chat text, null for hello and goodbye messages
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return the last bookmark the player saw, sent with a hello when they
+     *         reconnect, otherwise null
+     */
+    public String getBookmark() {
+        return bookmark;
+    }
+
+    @Override
+    public String toString() {
+        return type + "[userId=" + userId + ", username=" + username + ", content=" + content + ", bookmark=" + bookmark + "]";
+    }
+}
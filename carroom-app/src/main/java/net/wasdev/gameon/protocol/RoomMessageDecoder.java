@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+import java.io.Reader;
+
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+
+import net.wasdev.gameon.protocol.RoomMessage.Type;
+
+/**
+ * Decodes inbound mediator messages of the form <code>target,roomId,{json}</code>.
+ *
+ * The routing prefix is scanned in place rather than split into substrings, and
+ * the json body is read with a streaming parser that only keeps the top level
+ * <code>userId</code>, <code>username</code>, <code>content</code> and
+ * <code>bookmark</code> values.
+ * The result is written into a {@link RoomMessage} that is reused per thread.
+ */
+public class RoomMessageDecoder {
+    private final static String USERNAME = "username";
+    private final static String USERID = "userId";
+    private final static String CONTENT = "content";
+    private final static String BOOKMARK = "bookmark";
+
+    private final static String ROOM_HELLO = "roomHello";
+    private final static String ROOM = "room";
+    private final static String ROOM_GOODBYE = "roomGoodbye";
+
+    // Json.createParser looks up the provider on every call, the factory does not
+    private static final JsonParserFactory parserFactory = Json.createParserFactory(null);
+
+    private static final ThreadLocal<Decoder> decoders = new ThreadLocal<Decoder>() {
+        @Override
+        protected Decoder initialValue() {
+            return new Decoder();
+        }
+    };
+
+    /**
+     * Decode a message.
+     *
+     * @param message
+     *            the raw message received from the mediator
+     * @return this thread's {@link RoomMessage}, overwritten by the next call
+     */
+    public static RoomMessage decode(String message) {
+        return decoders.get().decode(message);
+    }
+
+    private static Type routingType(String message, int end) {
+        if (end == ROOM.length() && message.startsWith(ROOM)) {
+            return Type.ROOM;
+        }
+        if (end == ROOM_HELLO.length() && message.startsWith(ROOM_HELLO)) {
+            return Type.HELLO;
+        }
+        if (end == ROOM_GOODBYE.length() && message.startsWith(ROOM_GOODBYE)) {
+            return Type.GOODBYE;
+        }
+        return Type.UNKNOWN;
+    }
+
+    private static final class Decoder {
+        private final RoomMessage holder = new RoomMessage();
+        private final RegionReader reader = new RegionReader();
+
+        RoomMessage decode(String message) {
+            int brace = message.indexOf('{');
+            int first = message.indexOf(',');
+            int second = first < 0 ? -1 : message.indexOf(',', first + 1);
+            if (brace < 0 || first < 0 || first > brace || second < 0 || second > brace) {
+                holder.reset(Type.UNKNOWN);
+                return holder;
+            }
+
+            holder.reset(routingType(message, first));
+            if (holder.getType() != Type.UNKNOWN) {
+                reader.reset(message, second + 1);
+                readFields(parserFactory.createParser(reader));
+            }
+            return holder;
+        }
+
+        private void readFields(JsonParser parser) {
+            try {
+                int depth = 0;
+                int found = 0;
+                while (parser.hasNext() && found < 4) {
+                    Event event = parser.next();
+                    switch (event) {
+                        case START_OBJECT:
+                        case START_ARRAY:
+                            depth++;
+                            break;
+                        case END_OBJECT:
+                        case END_ARRAY:
+                            depth--;
+                            break;
+                        case KEY_NAME:
+                            if (depth == 1) {
+                                found += readField(parser, parser.getString());
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } finally {
+                parser.close();
+            }
+        }
+
+        private int readField(JsonParser parser, String key) {
+            if (!USERID.equals(key) && !USERNAME.equals(key) && !CONTENT.equals(key) && !BOOKMARK.equals(key)) {
+                return 0;
+            }
+            Event value = parser.next();
+            String text;
+            switch (value) {
+                case VALUE_STRING:
+                case VALUE_NUMBER:
+                    text = parser.getString();
+                    break;
+                case VALUE_TRUE:
+                    text = "true";
+                    break;
+                case VALUE_FALSE:
+                    text = "false";
+                    break;
+                case VALUE_NULL:
+                    text = "null";
+                    break;
+                default:
+                    // structured values are not used by the room, step over them
+                    skip(parser);
+                    return 0;
+            }
+            if (USERID.equals(key)) {
+                holder.setUserId(text);
+            } else if (USERNAME.equals(key)) {
+                holder.setUsername(text);
+            } else if (CONTENT.equals(key)) {
+                holder.setContent(text);
+            } else {
+                holder.setBookmark(text);
+            }
+            return 1;
+        }
+
+        private void skip(JsonParser parser) {
+            int depth = 1;
+            while (depth > 0 && parser.hasNext()) {
+                switch (parser.next()) {
+                    case START_OBJECT:
+                    case START_ARRAY:
+                        depth++;
+                        break;
+                    case END_OBJECT:
+                    case END_ARRAY:
+                        depth--;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * A {@link Reader} over the tail of a String, so the json body does not have to
+     * be copied out of the message.
+     */
+    private static final class RegionReader extends Reader {
+        private String source;
+        private int pos;
+
+        void reset(String source, int start) {
+            this.source = source;
+            this.pos = start;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            int remaining = source.length() - pos;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = Math.min(len, remaining);
+            source.getChars(pos, pos + n, cbuf, off);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int read() {
+            return pos < source.length() ? source.charAt(pos++) : -1;
+        }
+
+        @Override
+        public void close() {
+            source = null;
+        }
+    }
+}
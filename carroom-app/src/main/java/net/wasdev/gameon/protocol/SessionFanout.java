@@ -0,0 +1,374 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+import net.wasdev.gameon.metrics.Timer;
+
+/**
+ * Non-blocking fan-out of text frames to WebSocket sessions.
+ *
+ * Each session gets its own bounded outbound queue which is drained through
+ * {@link Session#getAsyncRemote()}, with at most one send in flight per session.
+ * A slow peer therefore only backs up its own queue, and when that queue is full
+ * the configured {@link OverflowPolicy} decides what to give up.
+ */
+public class SessionFanout {
+
+    /**
+     * What to do when a session's outbound queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Discard the oldest queued frame to make room for the new one. */
+        DROP_OLDEST,
+        /** Replace a queued frame with the same coalescing key, otherwise drop the oldest. */
+        COALESCE,
+        /** Give up on the peer and close its session. */
+        DISCONNECT;
+    }
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    // each fan-out keeps its own queue on a session, with its own capacity and policy
+    private final String queueKey = SessionFanout.class.getName() + ".queue." + instances.incrementAndGet();
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong droppedOldest = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+    // from queueing a frame to its write completing, and queueing a broadcast for every session
+    private final Timer sendLatency = new Timer();
+    private final Timer broadcastTime = new Timer();
+
+    public SessionFanout(int capacity, OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Outbound queue capacity must be at least 1 : " + capacity);
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * Queue a message for a single session.
+     *
+     * @param session
+     *            Session to send the message on
+     * @param message
+     *            Message to send
+     * @return true if the message was queued, false if the session is closed or
+     *         was disconnected because it could not keep up
+     */
+    public boolean send(Session session, String message) {
+        return send(session, message, null);
+    }
+
+    /**
+     * Queue a message for a single session.
+     *
+     * @param session
+     *            Session to send the message on
+     * @param message
+     *            Message to send
+     * @param coalesceKey
+     *            Frames queued with the same key supersede each other under
+     *            {@link OverflowPolicy#COALESCE}, may be null
+     * @return true if the message was queued, false if the session is closed or
+     *         was disconnected because it could not keep up
+     */
+    public boolean send(Session session, String message, String coalesceKey) {
+        if (!session.isOpen()) {
+            return false;
+        }
+        return queueFor(session).offer(new Frame(message, coalesceKey));
+    }
+
+    /**
+     * Queue the same message for every session. This never waits on the network.
+     *
+     * @param sessions
+     *            Sessions to send the message on
+     * @param message
+     *            Message to send
+     */
+    public void broadcast(Collection<Session> sessions, String message) {
+        broadcast(sessions, message, null);
+    }
+
+    /**
+     * Queue the same message for every session. This never waits on the network.
+     *
+     * @param sessions
+     *            Sessions to send the message on
+     * @param message
+     *            Message to send
+     * @param coalesceKey
+     *            see {@link #send(Session, String, String)}, may be null
+     */
+    public void broadcast(Collection<Session> sessions, String message, String coalesceKey) {
+        long start = System.nanoTime();
+        for (Session s : sessions) {
+            send(s, message, coalesceKey);
+        }
+        broadcastTime.recordSince(start);
+    }
+
+    /**
+     * Publish this fan-out's counters and timings.
+     *
+     * @param prefix
+     *            put in front of every metric name, e.g. "fanout"
+     */
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.register(prefix + ".send", sendLatency);
+        registry.register(prefix + ".broadcast", broadcastTime);
+        registry.gauge(prefix + ".sent", sent::get);
+        registry.gauge(prefix + ".failed", failed::get);
+        registry.gauge(prefix + ".droppedOldest", droppedOldest::get);
+        registry.gauge(prefix + ".coalesced", coalesced::get);
+        registry.gauge(prefix + ".disconnected", disconnected::get);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getDroppedOldestCount() {
+        return droppedOldest.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getDisconnectedCount() {
+        return disconnected.get();
+    }
+
+    private OutboundQueue queueFor(Session session) {
+        Map<String, Object> props = session.getUserProperties();
+        synchronized (props) {
+            OutboundQueue queue = (OutboundQueue) props.get(queueKey);
+            if (queue == null) {
+                queue = new OutboundQueue(session);
+                props.put(queueKey, queue);
+            }
+            return queue;
+        }
+    }
+
+    // forget a queue that has been given up on, unless it has already been replaced
+    private void remove(Session session, OutboundQueue queue) {
+        Map<String, Object> props = session.getUserProperties();
+        synchronized (props) {
+            if (props.get(queueKey) == queue) {
+                props.remove(queueKey);
+            }
+        }
+    }
+
+    private static void close(Session session, CloseCodes code, String reason) {
+        try {
+            session.close(new CloseReason(code, reason));
+        } catch (IOException | IllegalStateException e) {
+            // nothing more we can do with this peer
+        }
+    }
+
+    private static final class Frame {
+        private final String text;
+        private final String coalesceKey;
+        private final long queuedAt = System.nanoTime();
+
+        Frame(String text, String coalesceKey) {
+            this.text = text;
+            this.coalesceKey = coalesceKey;
+        }
+    }
+
+    /**
+     * Pending frames for one session. Only one frame is handed to the async remote at
+     * a time; its completion callback pulls the next one off the queue.
+     */
+    private final class OutboundQueue implements SendHandler {
+        private final Session session;
+        private final ArrayDeque<Frame> pending = new ArrayDeque<>();
+        // the frame handed to the async remote, read back in its completion callback
+        private volatile Frame inFlight;
+        private boolean sending = false;
+        private boolean abandoned = false;
+        // set while write() is handing a frame over, so a container that completes
+        // the send on the same call leaves the next frame to write()'s loop
+        private boolean handingOver = false;
+        private SendResult completedDuringHandOver;
+
+        OutboundQueue(Session session) {
+            this.session = session;
+        }
+
+        boolean offer(Frame frame) {
+            boolean overflowed = false;
+            synchronized (this) {
+                if (abandoned) {
+                    return false;
+                }
+                if (sending) {
+                    if (pending.size() >= capacity && !makeRoom(frame)) {
+                        abandoned = overflowed = true;
+                        pending.clear();
+                    } else {
+                        pending.add(frame);
+                        return true;
+                    }
+                } else {
+                    sending = true;
+                }
+            }
+            if (overflowed) {
+                disconnected.incrementAndGet();
+                remove(session, this);
+                close(session, CloseCodes.TRY_AGAIN_LATER, "Outbound queue overflow");
+                return false;
+            }
+            write(frame);
+            return true;
+        }
+
+        /**
+         * Apply the overflow policy to a full queue.
+         *
+         * @return true if there is now room for the frame (or it has been merged),
+         *         false if the session should be disconnected
+         */
+        private boolean makeRoom(Frame frame) {
+            switch (policy) {
+                case DISCONNECT:
+                    return false;
+                case COALESCE:
+                    if (frame.coalesceKey != null) {
+                        for (Iterator<Frame> it = pending.iterator(); it.hasNext();) {
+                            if (frame.coalesceKey.equals(it.next().coalesceKey)) {
+                                it.remove();
+                                coalesced.incrementAndGet();
+                                return true;
+                            }
+                        }
+                    }
+                    // nothing to merge with, so drop the oldest
+                    pending.poll();
+                    droppedOldest.incrementAndGet();
+                    return true;
+                case DROP_OLDEST:
+                default:
+                    pending.poll();
+                    droppedOldest.incrementAndGet();
+                    return true;
+            }
+        }
+
+        // send frames until one is left to complete later, or there are none left
+        private void write(Frame frame) {
+            while (frame != null) {
+                inFlight = frame;
+                SendResult thrown = null;
+                synchronized (this) {
+                    handingOver = true;
+                }
+                try {
+                    session.getAsyncRemote().sendText(frame.text, this);
+                } catch (RuntimeException e) {
+                    thrown = new SendResult(e);
+                }
+                SendResult result;
+                synchronized (this) {
+                    handingOver = false;
+                    result = thrown != null ? thrown : completedDuringHandOver;
+                    completedDuringHandOver = null;
+                }
+                if (result == null) {
+                    return; // onResult will carry on
+                }
+                frame = completed(result);
+            }
+        }
+
+        @Override
+        public void onResult(SendResult result) {
+            synchronized (this) {
+                if (handingOver) {
+                    completedDuringHandOver = result;
+                    return;
+                }
+            }
+            write(completed(result));
+        }
+
+        /**
+         * @return the next frame to send, or null if there is none or the session
+         *         has been given up on
+         */
+        private Frame completed(SendResult result) {
+            sendLatency.recordSince(inFlight.queuedAt);
+            if (!result.isOK()) {
+                failed.incrementAndGet();
+                synchronized (this) {
+                    abandoned = true;
+                    pending.clear();
+                    sending = false;
+                }
+                remove(session, this);
+                close(session, CloseCodes.UNEXPECTED_CONDITION, "Unable to write to session");
+                return null;
+            }
+            sent.incrementAndGet();
+            synchronized (this) {
+                Frame next = pending.poll();
+                if (next == null) {
+                    sending = false;
+                }
+                return next;
+            }
+        }
+    }
+}
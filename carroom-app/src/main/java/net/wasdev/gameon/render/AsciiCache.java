@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.render;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+import net.wasdev.gameon.metrics.Timer;
+
+/**
+ * Keeps the most recently used renders, by image hash and width, so asking for
+ * the same picture again does not render it again.
+ */
+public class AsciiCache {
+    private final AsciiRenderer renderer;
+    // least recently used first, and dropped once over capacity
+    private final Map<String, String> renders;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final Timer renderTime = new Timer();
+
+    /**
+     * @param capacity
+     *            how many renders to keep
+     */
+    public AsciiCache(AsciiRenderer renderer, int capacity) {
+        this.renderer = renderer;
+        this.renders = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param columns
+     *            characters per line
+     * @return the picture as ASCII art, see {@link AsciiRenderer#render}
+     */
+    public String render(Snapshot snapshot, int columns) {
+        String key = snapshot.getHash() + '@' + columns;
+        synchronized (renders) {
+            String art = renders.get(key);
+            if (art != null) {
+                hits.incrementAndGet();
+                return art;
+            }
+        }
+        misses.incrementAndGet();
+        // rendered outside the lock, two players asking at once may both render it
+        long start = System.nanoTime();
+        String art = renderer.render(snapshot.getImage(), columns);
+        renderTime.recordSince(start);
+        synchronized (renders) {
+            renders.put(key, art);
+        }
+        return art;
+    }
+
+    public int size() {
+        synchronized (renders) {
+            return renders.size();
+        }
+    }
+
+    /**
+     * Publish how well the cache is doing.
+     *
+     * @param prefix
+     *            put in front of every metric name, e.g. "snapshot"
+     */
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + ".cache.hits", hits::get);
+        registry.gauge(prefix + ".cache.misses", misses::get);
+        registry.gauge(prefix + ".cache.size", this::size);
+        registry.register(prefix + ".renderTime", renderTime);
+    }
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.render;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Turns an image into ASCII art, in the same <code>&lt;pre&gt;</code> format as
+ * the portraits the room ships with.
+ *
+ * The image is divided into one cell per character, each cell twice as tall as
+ * it is wide to match the shape of a character, and each cell becomes the
+ * character whose density is closest to the cell's average brightness. Rows are
+ * independent of each other, so they are shared out over a fork/join pool.
+ */
+public class AsciiRenderer {
+    /** What the portraits are wrapped in. */
+    public static final String PRE_OPEN = "<pre style='font-family: \"Courier New\", Courier, monospace; font-size: .25em;'>";
+    public static final String PRE_CLOSE = "</pre>";
+
+    // darkest first, the same characters the portraits are drawn with
+    private static final char[] PALETTE = "@80GCLft1i;:,. ".toCharArray();
+    // a character is about twice as tall as it is wide
+    private static final double CHAR_ASPECT = 2.0;
+    // rows rendered by one task before it stops splitting the work
+    private static final int ROWS_PER_TASK = 4;
+
+    private final ForkJoinPool pool;
+
+    public AsciiRenderer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool
+     *            renders the rows
+     */
+    public AsciiRenderer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param columns
+     *            characters per line, no more than the image is wide
+     * @return the picture, one line per row, wrapped in a pre element
+     */
+    public String render(BufferedImage image, int columns) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        columns = Math.max(1, Math.min(columns, width));
+        double cellWidth = (double) width / columns;
+        int rows = Math.max(1, Math.min(height, (int) Math.round(height / (cellWidth * CHAR_ASPECT))));
+        char[][] lines = new char[rows][columns];
+        pool.invoke(new Rows(pixels(image), width, lines, 0, rows, cellWidth, (double) height / rows));
+
+        StringBuilder art = new StringBuilder(PRE_OPEN.length() + PRE_CLOSE.length() + rows * (columns + 1) + 1);
+        art.append(PRE_OPEN).append('\n');
+        for (char[] line : lines) {
+            art.append(line).append('\n');
+        }
+        return art.append(PRE_CLOSE).toString();
+    }
+
+    // every pixel as packed RGB, row after row, without copying if it already is
+    private static int[] pixels(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            if (data.length == width * height) {
+                return data;
+            }
+        }
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    // renders a range of rows, splitting it in two until it is small enough
+    private static final class Rows extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] pixels;
+        private final int width;
+        private final char[][] lines;
+        private final int from;
+        private final int to;
+        private final double cellWidth;
+        private final double cellHeight;
+
+        Rows(int[] pixels, int width, char[][] lines, int from, int to, double cellWidth, double cellHeight) {
+            this.pixels = pixels;
+            this.width = width;
+            this.lines = lines;
+            this.from = from;
+            this.to = to;
+            this.cellWidth = cellWidth;
+            this.cellHeight = cellHeight;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                for (int row = from; row < to; row++) {
+                    renderRow(row);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Rows(pixels, width, lines, from, middle, cellWidth, cellHeight),
+                    new Rows(pixels, width, lines, middle, to, cellWidth, cellHeight));
+        }
+
+        private void renderRow(int row) {
+            int top = (int) (row * cellHeight);
+            int bottom = Math.max(top + 1, (int) ((row + 1) * cellHeight));
+
+            char[] line = lines[row];
+            for (int column = 0; column < line.length; column++) {
+                int left = (int) (column * cellWidth);
+                int right = Math.max(left + 1, (int) ((column + 1) * cellWidth));
+                long brightness = 0;
+                for (int y = top; y < bottom; y++) {
+                    int offset = y * width;
+                    for (int x = left; x < right; x++) {
+                        brightness += luminance(pixels[offset + x]);
+                    }
+                }
+                int average = (int) (brightness / ((right - left) * (bottom - top)));
+                line[column] = PALETTE[average * (PALETTE.length - 1) / 255];
+            }
+        }
+
+        // 0 to 255, weighted the way the eye sees colour
+        private static int luminance(int rgb) {
+            int r = (rgb >> 16) & 0xff;
+            int g = (rgb >> 8) & 0xff;
+            int b = rgb & 0xff;
+            return (r * 299 + g * 587 + b * 114) / 1000;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.render;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+/**
+ * A picture that can be rendered, with the hash of its bytes so renders of it
+ * can be cached.
+ */
+public final class Snapshot {
+    /** The widest and tallest picture that will be decoded. */
+    public static final int MAX_DIMENSION = 2048;
+
+    private final BufferedImage image;
+    private final String hash;
+    private final long takenAt;
+
+    private Snapshot(BufferedImage image, String hash, long takenAt) {
+        this.image = image;
+        this.hash = hash;
+        this.takenAt = takenAt;
+    }
+
+    /**
+     * @param bytes
+     *            an image in any format ImageIO reads, e.g. JPEG or PNG
+     * @throws IOException
+     *             if it is not an image, or is bigger than
+     *             {@link #MAX_DIMENSION} either way
+     */
+    public static Snapshot read(byte[] bytes) throws IOException {
+        try (ImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Not an image that can be read");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                // a small file can decode to a huge picture, so check its size from the header first
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width > MAX_DIMENSION || height > MAX_DIMENSION) {
+                    throw new IOException("Pictures must be at most " + MAX_DIMENSION + "x" + MAX_DIMENSION + " : "
+                            + width + "x" + height);
+                }
+                return new Snapshot(toRGB(reader.read(0)), sha256(bytes), System.currentTimeMillis());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // decoded images come in all sorts of layouts, the renderer reads packed RGB fastest
+    private static BufferedImage toRGB(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * @return the SHA-256 of the image as it was sent, in hex
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    public long getTakenAt() {
+        return takenAt;
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
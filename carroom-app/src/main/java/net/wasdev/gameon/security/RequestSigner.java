@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.security;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signs requests to the map service with one key: the SHA-256 hash of the body
+ * for the gameon-sig-body header, and the HMAC over the header values for
+ * gameon-signature.
+ *
+ * Initialised {@link Mac} and {@link MessageDigest} instances are kept for
+ * reuse, each used by one thread at a time, so signing does not look up the
+ * algorithms or set up the key again. They are held by the signer rather than by
+ * the threads that used them, so nothing is left behind on container threads when
+ * the application stops. Text is encoded a chunk at a time into small buffers
+ * kept with them, rather than joined into a String and copied out as bytes.
+ */
+public class RequestSigner {
+    private static final String HMAC = "HmacSHA256";
+    private static final String SHA = "SHA-256";
+
+    private interface Sink {
+        void update(byte[] bytes, int offset, int length);
+    }
+
+    // hashing state, used by one thread at a time
+    private static final class Engine {
+        final Mac mac;
+        final MessageDigest digest;
+        final Sink macSink;
+        final Sink digestSink;
+        // text is copied out a chunk at a time, and encoded into at most 3 bytes a char
+        final char[] chars = new char[256];
+        final byte[] bytes = new byte[256 * 3];
+
+        Engine(SecretKeySpec key) throws NoSuchAlgorithmException, InvalidKeyException {
+            digest = MessageDigest.getInstance(SHA);
+            digestSink = digest::update;
+            if (key == null) {
+                mac = null;
+                macSink = null;
+            } else {
+                mac = Mac.getInstance(HMAC);
+                mac.init(key);
+                macSink = mac::update;
+            }
+        }
+    }
+
+    // for hashing without a key, those not in use right now
+    private static final Queue<Engine> hashers = new ConcurrentLinkedQueue<>();
+
+    private final SecretKeySpec key;
+    private final Queue<Engine> engines = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param key
+     *            the shared secret the HMAC is keyed with
+     * @throws NoSuchAlgorithmException
+     *             if HmacSHA256 or SHA-256 is not found
+     * @throws InvalidKeyException
+     *             if the key cannot be used for HmacSHA256
+     */
+    public RequestSigner(String key) throws NoSuchAlgorithmException, InvalidKeyException {
+        this.key = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), HMAC);
+        // set one up now, so a bad key or algorithm is reported here
+        engines.add(new Engine(this.key));
+    }
+
+    /**
+     * The HMAC over the values, one after the other, as
+     * {@link SecurityUtils#buildHmac} calculates it.
+     *
+     * @return the HMAC as a base64 encoded string
+     */
+    public String sign(CharSequence... values) {
+        Engine engine = take(engines, key);
+        for (CharSequence value : values) {
+            update(value, engine, engine.macSink);
+        }
+        String hmac = Base64.getEncoder().encodeToString(engine.mac.doFinal());
+        // doFinal has reset it, one that failed part way through is not put back
+        engines.offer(engine);
+        return hmac;
+    }
+
+    /**
+     * @return the SHA-256 hash of the body as a base64 encoded string
+     */
+    public String hash(CharSequence body) {
+        return sha256(body);
+    }
+
+    /**
+     * Hash a body as it is written, e.g. while it is being serialised, and then get
+     * the hash with {@link #hashOf}.
+     *
+     * @param out
+     *            where the body goes
+     */
+    public DigestOutputStream hashing(OutputStream out) {
+        // the stream keeps its digest until hashOf, so it gets one of its own
+        return new DigestOutputStream(out, newEngine(null).digest);
+    }
+
+    /**
+     * @return the SHA-256 hash of everything written to the stream, as a base64
+     *         encoded string
+     */
+    public static String hashOf(DigestOutputStream hashing) {
+        return Base64.getEncoder().encodeToString(hashing.getMessageDigest().digest());
+    }
+
+    /**
+     * @return the SHA-256 hash of the text as a base64 encoded string
+     */
+    public static String sha256(CharSequence text) {
+        Engine engine = take(hashers, null);
+        if (text instanceof String) {
+            // the JVM encodes a whole String faster than we can a chunk at a time
+            engine.digest.update(((String) text).getBytes(StandardCharsets.UTF_8));
+        } else {
+            update(text, engine, engine.digestSink);
+        }
+        String hash = Base64.getEncoder().encodeToString(engine.digest.digest());
+        hashers.offer(engine);
+        return hash;
+    }
+
+    // an engine no other thread is using, made if they all are
+    private static Engine take(Queue<Engine> idle, SecretKeySpec key) {
+        Engine engine = idle.poll();
+        return engine == null ? newEngine(key) : engine;
+    }
+
+    private static Engine newEngine(SecretKeySpec key) {
+        try {
+            return new Engine(key);
+        } catch (GeneralSecurityException e) {
+            // already worked once, when the signer was made or the class loaded
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // feed the text to the sink as UTF-8, a chunk at a time
+    private static void update(CharSequence text, Engine engine, Sink sink) {
+        char[] chars = engine.chars;
+        byte[] bytes = engine.bytes;
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            int end = Math.min(length, start + chars.length);
+            if (end < length && Character.isHighSurrogate(text.charAt(end - 1))) {
+                // keep a surrogate pair in the same chunk
+                end--;
+            }
+            int count = end - start;
+            if (text instanceof String) {
+                ((String) text).getChars(start, end, chars, 0);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    chars[i] = text.charAt(start + i);
+                }
+            }
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                char c = chars[i];
+                if (c < 0x80) {
+                    bytes[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[n++] = (byte) (0xc0 | (c >> 6));
+                    bytes[n++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(chars[i + 1])) {
+                    int codePoint = Character.toCodePoint(c, chars[++i]);
+                    bytes[n++] = (byte) (0xf0 | (codePoint >> 18));
+                    bytes[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    bytes[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    bytes[n++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    // what String.getBytes does with half a pair
+                    bytes[n++] = '?';
+                } else {
+                    bytes[n++] = (byte) (0xe0 | (c >> 12));
+                    bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    bytes[n++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            sink.update(bytes, 0, n);
+            start = end;
+        }
+    }
+}
@@ -17,13 +17,9 @@ package net.wasdev.gameon.security;
 
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidKeyException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
 import java.util.List;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.X509TrustManager;
@@ -40,15 +36,7 @@ public class SecurityUtils {
      * @throws UnsupportedEncodingException If the keystring or hash string are not UTF-8
      */
     public static String buildHmac(List<String> stuffToHash, String key) throws NoSuchAlgorithmException, InvalidKeyException, UnsupportedEncodingException{
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(new SecretKeySpec(key.getBytes("UTF-8"), "HmacSHA256"));
-
-        StringBuffer hashData = new StringBuffer();
-        for(String s: stuffToHash){
-            hashData.append(s);
-        }
-
-        return Base64.getEncoder().encodeToString( mac.doFinal(hashData.toString().getBytes("UTF-8")) );
+        return new RequestSigner(key).sign(stuffToHash.toArray(new String[stuffToHash.size()]));
     }
 
     /**
@@ -59,10 +47,7 @@ public class SecurityUtils {
      * @throws UnsupportedEncodingException If the String is not UTF-8
      */
     public static String buildHash(String data) throws NoSuchAlgorithmException, UnsupportedEncodingException{
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        md.update(data.getBytes("UTF-8"));
-        byte[] digest = md.digest();
-        return Base64.getEncoder().encodeToString( digest );
+        return RequestSigner.sha256(data);
     }
 
 
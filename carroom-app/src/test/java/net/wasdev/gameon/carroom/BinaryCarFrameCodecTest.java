@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class BinaryCarFrameCodecTest {
+
+    private final CarFrameCodec codec = new BinaryCarFrameCodec();
+
+    @Test
+    public void encodesATurnInTheDocumentedLayout() {
+        CarInstruction instruction = new CarInstruction("dummy.DevUser", CarDirection.LEFT, 40);
+        CarFrame frame = codec.encode(instruction);
+        assertTrue(frame.isBinary());
+        assertSame(instruction, frame.getInstruction());
+
+        ByteBuffer bytes = frame.getBinary();
+        assertEquals(BinaryCarFrameCodec.VERSION, bytes.get());
+        assertEquals(BinaryCarFrameCodec.TURNING, bytes.get());
+        assertEquals(-40, bytes.getShort());
+        assertEquals(instruction.getGroup(), bytes.getLong());
+        byte[] userid = new byte[bytes.get() & 0xff];
+        bytes.get(userid);
+        assertEquals("dummy.DevUser", new String(userid, StandardCharsets.UTF_8));
+        assertFalse(bytes.hasRemaining());
+    }
+
+    @Test
+    public void encodesTheThrottle() {
+        CarInstruction instruction = new CarInstruction("u", CarDirection.BACKWARDS, 3);
+        ByteBuffer bytes = codec.encode(instruction).getBinary();
+        bytes.get();
+        assertEquals(BinaryCarFrameCodec.THROTTLE, bytes.get());
+        assertEquals(-70, bytes.getShort());
+    }
+
+    @Test
+    public void theGroupMatchesTheHexIdSentAsJson() {
+        CarInstruction instruction = new CarInstruction("u", CarDirection.FORWARDS, 1);
+        ByteBuffer bytes = codec.encode(instruction).getBinary();
+        assertEquals(instruction.getID(), Long.toHexString(bytes.getLong(4)));
+    }
+
+    @Test
+    public void userIdsAreUtf8() {
+        String userid = "github:Zo\u00eb";
+        ByteBuffer bytes = codec.encode(new CarInstruction(userid, CarDirection.RIGHT, 1)).getBinary();
+        assertEquals(userid.getBytes(StandardCharsets.UTF_8).length, bytes.get(12) & 0xff);
+        assertEquals(13 + 11, bytes.remaining());
+    }
+
+    @Test
+    public void eachReadOfTheFrameStartsAtTheBeginning() {
+        CarFrame frame = codec.encode(new CarInstruction("u", CarDirection.RIGHT, 1));
+        ByteBuffer first = frame.getBinary();
+        first.position(first.limit());
+        assertEquals(0, frame.getBinary().position());
+    }
+
+    @Test
+    public void userIdsTooLongForTheFrameAreSentAsJson() {
+        StringBuilder userid = new StringBuilder();
+        for (int i = 0; i < 256; i++) {
+            userid.append('x');
+        }
+        CarInstruction instruction = new CarInstruction(userid.toString(), CarDirection.FORWARDS, 1);
+        CarFrame frame = codec.encode(instruction);
+        assertFalse(frame.isBinary());
+        assertEquals(instruction.toJSON(), frame.getText());
+    }
+
+    @Test
+    public void namesPickTheCodec() {
+        assertTrue(CarFrameCodec.forName("BINARY") instanceof BinaryCarFrameCodec);
+        assertSame(CarFrameCodec.JSON, CarFrameCodec.forName("json"));
+        assertSame(CarFrameCodec.JSON, CarFrameCodec.forName(null));
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.wasdev.gameon.carroom.CarFleet.DispatchPolicy;
+
+public class CarFleetTest {
+
+    // a car whose readiness and load the test sets
+    private static final class TestCar extends NoOpCarDriver {
+        boolean ready = true;
+        long pulses = 0;
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public long getPendingPulses() {
+            return pulses;
+        }
+    }
+
+    private final TestCar one = new TestCar();
+    private final TestCar two = new TestCar();
+
+    @Test
+    public void playerKeepsTheirCarAsLoadsChange() {
+        CarFleet fleet = new CarFleet(Arrays.asList(one, two), DispatchPolicy.LEAST_LOADED);
+        one.pulses = 5;
+        assertSame(two, fleet.select("alice"));
+        two.pulses = 50;
+        assertSame(two, fleet.select("alice"));
+        assertSame(two, fleet.select("alice"));
+        // a new player still goes to the least loaded car
+        assertSame(one, fleet.select("bob"));
+    }
+
+    @Test
+    public void leastLoadedMovesAPlayerWhoseCarDrops() {
+        CarFleet fleet = new CarFleet(Arrays.asList(one, two), DispatchPolicy.LEAST_LOADED);
+        assertSame(one, fleet.select("alice"));
+        one.ready = false;
+        assertSame(two, fleet.select("alice"));
+        one.ready = true;
+        assertSame(two, fleet.select("alice"));
+    }
+
+    @Test
+    public void stickyWaitsForACarThatDrops() {
+        CarFleet fleet = new CarFleet(Arrays.asList(one, two), DispatchPolicy.STICKY);
+        assertSame(one, fleet.select("alice"));
+        one.ready = false;
+        assertSame(one, fleet.select("alice"));
+    }
+
+    @Test
+    public void releaseLetsThePlayerBeRebalanced() {
+        CarFleet fleet = new CarFleet(Arrays.asList(one, two), DispatchPolicy.STICKY);
+        assertSame(one, fleet.select("alice"));
+        one.pulses = 5;
+        fleet.release("alice");
+        assertSame(two, fleet.select("alice"));
+    }
+
+    @Test
+    public void chosenCarOverridesThePolicy() {
+        CarFleet fleet = new CarFleet(Arrays.asList(one, two), DispatchPolicy.LEAST_LOADED);
+        assertSame(one, fleet.select("alice"));
+        assertTrue(fleet.choose("alice", 2));
+        two.ready = false;
+        assertSame(two, fleet.select("alice"));
+    }
+}
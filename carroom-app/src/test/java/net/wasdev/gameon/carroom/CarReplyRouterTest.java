@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+
+public class CarReplyRouterTest {
+
+    private final PlayerRegistry players = new PlayerRegistry();
+    private final CarReplyRouter router = new CarReplyRouter(players, 2);
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    @Before
+    public void room() {
+        players.join(PlayerRegistryTest.session("1"), "alice", "Alice");
+        players.join(PlayerRegistryTest.session("2"), "bob", "Bob");
+        router.registerMetrics(metrics, "replies");
+    }
+
+    private String reply(CarInstruction instruction, String userid) {
+        return "{'msggrp':'" + instruction.getID() + "','status':'ok'} " + userid;
+    }
+
+    private void assertMetrics(long byGroup, long byUser, long dropped) {
+        Map<String, Long> values = metrics.snapshot();
+        assertEquals(byGroup, values.get("replies.routedByGroup").longValue());
+        assertEquals(byUser, values.get("replies.routedByUser").longValue());
+        assertEquals(dropped, values.get("replies.dropped").longValue());
+    }
+
+    @Test
+    public void routesByMessageGroup() {
+        CarInstruction instruction = new CarInstruction("alice", CarDirection.FORWARDS, 1);
+        router.sent(instruction);
+        // the group wins over whoever the car names at the end
+        assertEquals("alice", router.route(reply(instruction, "bob")).getUserId());
+        assertMetrics(1, 0, 0);
+    }
+
+    @Test
+    public void fallsBackToTheLastWord() {
+        assertEquals("bob", router.route("Car is ready bob").getUserId());
+        CarInstruction unknown = new CarInstruction("alice", CarDirection.LEFT, 1);
+        assertEquals("bob", router.route(reply(unknown, "bob")).getUserId());
+        assertNull(router.route("nobody"));
+        assertMetrics(0, 2, 1);
+    }
+
+    @Test
+    public void forgetsTheOldestGroupOnceFull() {
+        CarInstruction first = new CarInstruction("alice", CarDirection.FORWARDS, 1);
+        CarInstruction second = new CarInstruction("alice", CarDirection.FORWARDS, 2);
+        CarInstruction third = new CarInstruction("alice", CarDirection.FORWARDS, 3);
+        router.sent(first);
+        router.sent(second);
+        router.sent(third);
+
+        // the first group is gone, so the reply goes on the name at the end
+        assertEquals("bob", router.route(reply(first, "bob")).getUserId());
+        assertEquals("alice", router.route(reply(second, "bob")).getUserId());
+        assertEquals("alice", router.route(reply(third, "bob")).getUserId());
+        assertMetrics(2, 1, 0);
+    }
+
+    @Test
+    public void dropsRepliesForPlayersWhoHaveLeft() {
+        CarInstruction instruction = new CarInstruction("alice", CarDirection.RIGHT, 1);
+        router.sent(instruction);
+        players.leave("alice");
+
+        assertNull(router.route(reply(instruction, "alice")));
+        assertNull(router.route("Car is ready alice"));
+        assertMetrics(0, 0, 2);
+    }
+}
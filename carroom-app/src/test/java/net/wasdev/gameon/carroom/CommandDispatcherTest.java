@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.wasdev.gameon.protocol.RoomMessage;
+import net.wasdev.gameon.protocol.RoomMessageDecoder;
+
+public class CommandDispatcherTest {
+
+    private final CommandDispatcher commands = new CommandDispatcher();
+    private final List<String> calls = new ArrayList<>();
+
+    private CommandDispatcher.Command recording(String name) {
+        return (session, msg, argStart) -> calls.add(name + ":" + argStart);
+    }
+
+    private static RoomMessage command(String content) {
+        return RoomMessageDecoder.decode("room,CarRoom,{\"username\":\"DevUser\",\"userId\":\"dummy.DevUser\",\"content\":\""
+                + content + "\"}");
+    }
+
+    @Test
+    public void dispatchesOnTheVerbIgnoringCase() throws IOException {
+        commands.register("/look", recording("look"));
+        assertTrue(commands.dispatch(null, command("/look")));
+        assertTrue(commands.dispatch(null, command("/LOOK")));
+        assertTrue(commands.dispatch(null, command("/Look")));
+        assertEquals("[look:-1, look:-1, look:-1]", calls.toString());
+    }
+
+    @Test
+    public void passesWhereTheArgumentsStart() throws IOException {
+        commands.register("/left", recording("left"));
+        assertTrue(commands.dispatch(null, command("/left 50")));
+        assertTrue(commands.dispatch(null, command("/left ")));
+        assertEquals("[left:6, left:6]", calls.toString());
+    }
+
+    @Test
+    public void unknownVerbsAreNotDispatched() throws IOException {
+        commands.register("/go", recording("go"));
+        assertFalse(commands.dispatch(null, command("/gone")));
+        assertFalse(commands.dispatch(null, command("/g")));
+        assertFalse(commands.dispatch(null, command("go n")));
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void registeringAgainReplacesTheHandler() throws IOException {
+        CommandDispatcher.Command first = recording("first");
+        CommandDispatcher.Command second = recording("second");
+        commands.register("/car", first);
+        commands.register("/CAR", second);
+        assertSame(second, commands.lookup("/car", 4));
+        commands.dispatch(null, command("/car 2"));
+        assertEquals("[second:5]", calls.toString());
+    }
+
+    @Test
+    public void growsAsVerbsAreAdded() {
+        List<CommandDispatcher.Command> handlers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            CommandDispatcher.Command handler = recording("verb" + i);
+            handlers.add(handler);
+            commands.register("/verb" + i, handler);
+        }
+        for (int i = 0; i < 100; i++) {
+            String verb = "/VERB" + i + " arguments";
+            assertSame(handlers.get(i), commands.lookup(verb, verb.indexOf(' ')));
+        }
+        assertNull(commands.lookup("/verb100", 8));
+    }
+
+    @Test
+    public void looksUpOnlyTheVerbPartOfTheText() {
+        CommandDispatcher.Command handler = recording("go");
+        commands.register("/go", handler);
+        assertSame(handler, commands.lookup("/go north", 3));
+        assertNull(commands.lookup("/go north", 5));
+    }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+
+public class InFlightTableTest {
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private InFlightTable table;
+
+    @Before
+    public void setUp() {
+        table = table(16, 60000);
+    }
+
+    private InFlightTable table(int capacity, long expiryMillis) {
+        InFlightTable created = new InFlightTable(capacity, expiryMillis);
+        metrics.removeAll("car");
+        created.registerMetrics(metrics, "car");
+        return created;
+    }
+
+    private long metric(String name) {
+        Map<String, Long> values = metrics.snapshot();
+        return values.get("car." + name);
+    }
+
+    private CarInstruction sent(String userid) {
+        CarInstruction instruction = new CarInstruction(userid, CarDirection.FORWARDS, 1);
+        table.queued(instruction);
+        table.pulseSent(instruction);
+        return instruction;
+    }
+
+    @Test
+    public void matchesRepliesOnTheirMessageGroup() {
+        CarInstruction first = sent("alice");
+        CarInstruction second = sent("alice");
+        table.replied("Car did 'throttle':20 msggrp:" + second.getID() + " for alice");
+        table.replied("Car did 'throttle':20 msggrp:" + first.getID() + " for alice");
+        assertEquals(2, metric("inflight.acknowledged"));
+        assertEquals(0, table.size());
+        assertEquals(2, metric("latency.forwards.roundTrip.count"));
+        assertEquals(2, metric("latency.forwards.queueWait.count"));
+    }
+
+    @Test
+    public void matchesRepliesWithoutAGroupToThePlayersOldestSentInstruction() {
+        CarInstruction alice1 = sent("alice");
+        sent("bob");
+        CarInstruction alice2 = sent("alice");
+        table.replied("Car did something for alice");
+        assertEquals(1, metric("inflight.acknowledged"));
+        // the first was taken, so the second still matches on its group
+        table.replied("{'msggrp':'" + alice1.getID() + "'} for alice");
+        assertEquals(1, metric("inflight.unmatched"));
+        table.replied("{'msggrp':'" + alice2.getID() + "'} for alice");
+        assertEquals(2, metric("inflight.acknowledged"));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void repliesToInstructionsNotYetSentAreUnmatched() {
+        CarInstruction instruction = new CarInstruction("alice", CarDirection.LEFT, 10);
+        table.queued(instruction);
+        table.replied("Car did something for alice");
+        table.replied("msggrp:" + instruction.getID() + " for alice");
+        assertEquals(0, metric("inflight.acknowledged"));
+        assertEquals(2, metric("inflight.unmatched"));
+    }
+
+    @Test
+    public void evictsTheOldestWhenFull() {
+        table = table(2, 60000);
+        CarInstruction oldest = sent("alice");
+        sent("alice");
+        sent("alice");
+        assertEquals(2, table.size());
+        assertEquals(1, metric("inflight.evicted"));
+        table.replied("msggrp:" + oldest.getID() + " for alice");
+        assertEquals(1, metric("inflight.unmatched"));
+        // the evicted instruction is not matched by a reply without a group either
+        table.replied("Car did something for alice");
+        table.replied("Car did something for alice");
+        table.replied("Car did something for alice");
+        assertEquals(2, metric("inflight.acknowledged"));
+        assertEquals(2, metric("inflight.unmatched"));
+    }
+
+    @Test
+    public void forgetsInstructionsThatAreNeverAcknowledged() throws InterruptedException {
+        table = table(16, 1);
+        sent("alice");
+        sent("bob");
+        Thread.sleep(5);
+        table.expire();
+        assertEquals(0, table.size());
+        assertEquals(2, metric("inflight.expired"));
+        table.replied("Car did something for alice");
+        assertEquals(1, metric("inflight.unmatched"));
+    }
+
+    @Test
+    public void findsTheGroupInEitherReplyFormat() {
+        assertEquals("15a3e1c2d0000001", InFlightTable.groupOf("Car did 'throttle':20 msggrp:15a3e1c2d0000001 for alice"));
+        assertEquals("0f8fad5b-d9cb-469f-a165-70867728950e",
+                InFlightTable.groupOf("{'msggrp':'0f8fad5b-d9cb-469f-a165-70867728950e'} alice"));
+        assertEquals("abc", InFlightTable.groupOf("{\"msggrp\" : \"abc\"}"));
+        assertNull(InFlightTable.groupOf("Car did something for alice"));
+        assertNull(InFlightTable.groupOf("msggrp:"));
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class InstructionSchedulerTest {
+
+    private final InstructionScheduler<String> scheduler = new InstructionScheduler<>();
+
+    private List<String> drain() {
+        List<String> sent = new ArrayList<>();
+        for (String next = scheduler.next(); next != null; next = scheduler.next()) {
+            sent.add(next);
+        }
+        return sent;
+    }
+
+    @Test
+    public void takesOnePulseFromEachUserInTurn() {
+        scheduler.add("alice", "a1", 3);
+        scheduler.add("bob", "b1", 1);
+        scheduler.add("alice", "a2", 1);
+        scheduler.add("carol", "c1", 2);
+        assertEquals("[a1, b1, c1, a1, c1, a1, a2]", drain().toString());
+        assertTrue(scheduler.isEmpty());
+    }
+
+    @Test
+    public void countsWhatIsQueued() {
+        scheduler.add("alice", "a1", 3);
+        scheduler.add("alice", "a2", 2);
+        scheduler.add("bob", "b1", 1);
+        assertEquals(2, scheduler.getActiveUsers());
+        assertEquals(6, scheduler.getPendingPulses());
+        assertEquals(3, scheduler.getQueueDepth());
+        assertEquals(2, scheduler.getQueueDepth("alice"));
+
+        scheduler.next();
+        scheduler.next();
+        assertEquals(4, scheduler.getPendingPulses());
+        assertEquals(1, scheduler.getActiveUsers());
+        assertEquals(0, scheduler.getQueueDepth("bob"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInstructionsWithNoPulses() {
+        scheduler.add("alice", "a1", 0);
+    }
+
+    @Test
+    public void keepsStatisticsAfterTheQueueDrainsUntilTheUserLeaves() {
+        scheduler.add("alice", "a1", 1);
+        drain();
+        assertNotNull(scheduler.getStats("alice"));
+        assertEquals(0, scheduler.getStats("alice").getDepth());
+        assertTrue(scheduler.getStats().containsKey("alice"));
+
+        scheduler.release("alice");
+        assertNull(scheduler.getStats("alice"));
+        assertTrue(scheduler.getStats().isEmpty());
+    }
+
+    @Test
+    public void aUserWhoLeavesWithInstructionsQueuedIsForgottenOnceTheyAreSent() {
+        scheduler.add("alice", "a1", 2);
+        scheduler.release("alice");
+        assertNotNull(scheduler.getStats("alice"));
+        assertEquals("[a1, a1]", drain().toString());
+        assertNull(scheduler.getStats("alice"));
+    }
+
+    @Test
+    public void aUserWhoComesBackIsKept() {
+        scheduler.add("alice", "a1", 2);
+        scheduler.release("alice");
+        scheduler.add("alice", "a2", 1);
+        drain();
+        assertNotNull(scheduler.getStats("alice"));
+    }
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+
+// Log is static and cannot be started again once shut down, so the shutdown
+// test has to run last
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class LogTest {
+
+    private static final Logger logger = Logger.getLogger("net.wasdev.gameon.mediator");
+
+    // what has been written, and on which thread
+    private static final class Capture extends Handler {
+        final List<LogRecord> records = new CopyOnWriteArrayList<>();
+        final List<String> threads = new CopyOnWriteArrayList<>();
+        volatile CountDownLatch hold;
+
+        @Override
+        public void publish(LogRecord record) {
+            CountDownLatch latch = hold;
+            if (latch != null && Thread.currentThread().getName().equals("log-writer")) {
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            records.add(record);
+            threads.add(Thread.currentThread().getName());
+        }
+
+        long count(String prefix) {
+            return records.stream().filter(r -> r.getMessage().contains(prefix)).count();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final Capture capture = new Capture();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private boolean useParentHandlers;
+
+    @Before
+    public void capture() {
+        useParentHandlers = logger.getUseParentHandlers();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(capture);
+        Log.registerMetrics(metrics, "log");
+    }
+
+    @After
+    public void release() {
+        logger.removeHandler(capture);
+        logger.setUseParentHandlers(useParentHandlers);
+        Log.configure("car:1", "car:20");
+    }
+
+    private long metric(String name) {
+        return metrics.snapshot().get(name);
+    }
+
+    // wait for the writer to catch up
+    private void awaitWritten(String prefix, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (capture.count(prefix) < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, capture.count(prefix));
+    }
+
+    @Test
+    public void dropsMessagesWhenTheRingIsFull() throws InterruptedException {
+        capture.hold = new CountDownLatch(1);
+        long dropped = metric("log.dropped");
+        // the writer takes this one and is held writing it
+        Log.log(Level.INFO, this, "overflow first");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (metric("log.queueDepth") != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        for (int i = 0; i < 8192 + 10; i++) {
+            Log.log(Level.INFO, this, "overflow info");
+        }
+        Log.log(Level.WARNING, this, "overflow warning");
+
+        assertEquals(11, metric("log.dropped") - dropped);
+        // warnings are written by the caller rather than lost
+        assertEquals(1, capture.count("overflow warning"));
+        assertEquals(Thread.currentThread().getName(), capture.threads.get(capture.threads.size() - 1));
+
+        capture.hold.countDown();
+        awaitWritten("overflow info", 8192);
+        assertEquals(0, metric("log.queueDepth"));
+    }
+
+    @Test
+    public void samplesAndLimitsACategory() throws InterruptedException {
+        long suppressed = metric("log.car.suppressed");
+        Log.configure("car:3", "car:0");
+        for (int i = 0; i < 30; i++) {
+            Log.log(Log.Category.CAR, Level.INFO, this, "sampled {0}", i);
+        }
+        awaitWritten("sampled", 10);
+        assertEquals(20, metric("log.car.suppressed") - suppressed);
+
+        suppressed = metric("log.car.suppressed");
+        Log.configure("car:1", "car:5");
+        for (int i = 0; i < 20; i++) {
+            Log.log(Log.Category.CAR, Level.INFO, this, "limited {0}", i);
+        }
+        // at most two seconds' worth, if the clock ticks over part way through
+        long limited = metric("log.car.suppressed") - suppressed;
+        assertTrue(String.valueOf(limited), limited >= 10 && limited <= 15);
+        awaitWritten("limited", 20 - limited);
+    }
+
+    @Test
+    public void writesEverythingQueuedOnShutdown() {
+        for (int i = 0; i < 1000; i++) {
+            Log.log(Level.INFO, this, "before shutdown");
+        }
+        Log.shutdown();
+        assertEquals(1000, capture.count("before shutdown"));
+
+        Log.log(Level.INFO, this, "after shutdown");
+        assertEquals(1, capture.count("after shutdown"));
+        assertEquals(Thread.currentThread().getName(), capture.threads.get(capture.threads.size() - 1));
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.websocket.Session;
+
+import org.junit.Test;
+
+public class PlayerRegistryTest {
+
+    private final PlayerRegistry registry = new PlayerRegistry();
+
+    // a session that only knows its id, which is all the registry asks of it
+    static Session session(String id) {
+        return (Session) Proxy.newProxyInstance(PlayerRegistryTest.class.getClassLoader(), new Class<?>[] { Session.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return id;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "session " + id;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static List<String> userIds(Collection<PlayerRegistry.Player> players) {
+        List<String> ids = new ArrayList<>();
+        for (PlayerRegistry.Player player : players) {
+            ids.add(player.getUserId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void joinAndLeave() {
+        Session session = session("1");
+        registry.opened(session);
+        assertEquals(1, registry.getConnectionCount());
+        assertEquals(0, registry.getSessionCount());
+
+        assertTrue(registry.join(session, "alice", "Alice"));
+        assertFalse(registry.join(session, "alice", "Alice"));
+        assertTrue(registry.join(session, "bob", "Bob"));
+        assertEquals(2, registry.getPlayerCount());
+        assertEquals(1, registry.getSessionCount());
+        assertSame(session, registry.getPlayer("alice").getSession());
+        assertEquals("Alice", registry.getPlayer("alice").getUsername());
+
+        assertEquals("alice", registry.leave("alice").getUserId());
+        assertNull(registry.leave("alice"));
+        assertNull(registry.getPlayer("alice"));
+        // bob is still carried by the session
+        assertEquals(1, registry.getSessionCount());
+
+        registry.leave("bob");
+        assertEquals(0, registry.getSessionCount());
+        assertTrue(registry.getSessions().isEmpty());
+        assertEquals(1, registry.getConnectionCount());
+    }
+
+    @Test
+    public void closingASessionTakesItsPlayers() {
+        Session first = session("1");
+        Session second = session("2");
+        registry.opened(first);
+        registry.opened(second);
+        registry.join(first, "alice", "Alice");
+        registry.join(first, "bob", "Bob");
+        registry.join(second, "carol", "Carol");
+
+        List<String> gone = userIds(registry.closed(first));
+        assertEquals(2, gone.size());
+        assertTrue(gone.contains("alice") && gone.contains("bob"));
+        assertEquals(1, registry.getConnectionCount());
+        assertEquals(1, registry.getPlayerCount());
+        assertEquals(1, registry.getSessionCount());
+        assertSame(second, registry.getSessions().iterator().next());
+
+        assertTrue(registry.closed(session("3")).isEmpty());
+    }
+
+    @Test
+    public void aPlayerMovesToTheirNewSession() {
+        Session first = session("1");
+        Session second = session("2");
+        registry.join(first, "alice", "Alice");
+
+        assertFalse(registry.join(second, "alice", "Alice"));
+        assertSame(second, registry.getPlayer("alice").getSession());
+        // the old session has no one left, so broadcasts skip it
+        assertEquals(1, registry.getSessionCount());
+        assertSame(second, registry.getSessions().iterator().next());
+
+        // and closing it does not take alice with it
+        assertTrue(registry.closed(first).isEmpty());
+        assertSame(second, registry.getPlayer("alice").getSession());
+        assertEquals("alice", userIds(registry.closed(second)).get(0));
+        assertEquals(0, registry.getPlayerCount());
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RegistrationCacheTest {
+    private static final String MAP = "https://game-on.org/map/v1/sites";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private RegistrationCache cache;
+
+    @Before
+    public void create() {
+        file = folder.getRoot().toPath().resolve("registration").resolve("room.properties");
+        cache = new RegistrationCache(file);
+    }
+
+    @Test
+    public void nothingStored() {
+        assertNull(cache.getId(MAP, "owner"));
+        assertNull(cache.getFingerprint());
+    }
+
+    @Test
+    public void storedForTheSameMapAndOwner() {
+        cache.store(MAP, "owner", "room-42", "fp1");
+        assertEquals("room-42", cache.getId(MAP, "owner"));
+        assertEquals("fp1", cache.getFingerprint());
+
+        // a new cache over the same file, as after a restart
+        assertEquals("room-42", new RegistrationCache(file).getId(MAP, "owner"));
+    }
+
+    @Test
+    public void notForAnotherMapOrOwner() {
+        cache.store(MAP, "owner", "room-42", "fp1");
+        assertNull(cache.getId("http://localhost/map/v1/sites", "owner"));
+        assertNull(cache.getId(MAP, "someone else"));
+    }
+
+    @Test
+    public void fingerprintFollowsTheLatestRegistration() {
+        cache.store(MAP, "owner", "room-42", "fp1");
+        cache.store(MAP, "owner", "room-42", "fp2");
+        assertEquals("fp2", cache.getFingerprint());
+    }
+
+    @Test
+    public void clear() {
+        cache.store(MAP, "owner", "room-42", "fp1");
+        cache.clear();
+        assertFalse(Files.exists(file));
+        assertNull(cache.getId(MAP, "owner"));
+        assertNull(cache.getFingerprint());
+        // and again, with nothing there
+        cache.clear();
+    }
+
+    @Test
+    public void unreadableFileIsIgnored() throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, "id=room-42\nfingerprint=\\uzzzz\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(cache.getId(MAP, "owner"));
+        assertNull(cache.getFingerprint());
+
+        // and replaced by the next registration
+        cache.store(MAP, "owner", "room-43", "fp1");
+        assertEquals("room-43", cache.getId(MAP, "owner"));
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carroom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class RegistrationClientTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private RegistrationClient client;
+
+    // the last request the server saw
+    private volatile String method;
+    private volatile String path;
+    private volatile String signature;
+    private volatile String contentType;
+    private volatile String body;
+    private final AtomicInteger status = new AtomicInteger(200);
+
+    @Before
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        client = new RegistrationClient(2000, 2000);
+    }
+
+    @After
+    public void stop() throws IOException {
+        client.close();
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        method = exchange.getRequestMethod();
+        path = exchange.getRequestURI().getRawPath();
+        signature = exchange.getRequestHeaders().getFirst("gameon-signature");
+        contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        body = read(exchange.getRequestBody());
+        byte[] reply = ("{\"method\":\"" + method + "\"}").getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status.get(), reply.length);
+        exchange.getResponseBody().write(reply);
+        exchange.close();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int n; (n = in.read(buffer)) != -1;) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void get() throws IOException {
+        RegistrationClient.Response response = client.get(baseUrl + "/map/v1/sites/room%2F1");
+        assertEquals("GET", method);
+        assertEquals("/map/v1/sites/room%2F1", path);
+        assertEquals(200, response.getStatus());
+        assertEquals("{\"method\":\"GET\"}", response.getBody());
+        assertTrue(response.isSuccess());
+    }
+
+    @Test
+    public void sendsTheBodyAndHeaders() throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("gameon-signature", "abc");
+        byte[] json = "{\"name\":\"caf\u00e9\"}".getBytes(StandardCharsets.UTF_8);
+
+        status.set(201);
+        RegistrationClient.Response response = client.send("POST", baseUrl + "/map/v1/sites", json, headers);
+        assertEquals("POST", method);
+        assertEquals("abc", signature);
+        assertTrue(contentType, contentType.startsWith("application/json"));
+        assertEquals("{\"name\":\"caf\u00e9\"}", body);
+        assertEquals(201, response.getStatus());
+
+        // the pooled connection is good for the next request
+        status.set(200);
+        response = client.send("PUT", baseUrl + "/map/v1/sites/1", json, Collections.<String, String> emptyMap());
+        assertEquals("PUT", method);
+        assertEquals("{\"method\":\"PUT\"}", response.getBody());
+    }
+
+    @Test
+    public void statuses() {
+        assertTrue(new RegistrationClient.Response(204, "").isSuccess());
+        assertFalse(new RegistrationClient.Response(304, "").isSuccess());
+
+        assertTrue(new RegistrationClient.Response(503, "").isRetryable());
+        assertTrue(new RegistrationClient.Response(429, "").isRetryable());
+        assertTrue(new RegistrationClient.Response(408, "").isRetryable());
+        assertFalse(new RegistrationClient.Response(404, "").isRetryable());
+        assertFalse(new RegistrationClient.Response(409, "").isRetryable());
+    }
+
+    @Test
+    public void failedResponsesAreReturned() throws IOException {
+        status.set(503);
+        RegistrationClient.Response response = client.get(baseUrl + "/map/v1/sites");
+        assertEquals(503, response.getStatus());
+        assertFalse(response.isSuccess());
+        assertTrue(response.isRetryable());
+    }
+
+    @Test(expected = IOException.class)
+    public void connectionRefused() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        client.get("http://127.0.0.1:" + port + "/map/v1/sites");
+    }
+}
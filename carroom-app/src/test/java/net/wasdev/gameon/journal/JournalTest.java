@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.wasdev.gameon.journal.Journal.Type;
+import net.wasdev.gameon.journal.JournalReader.Record;
+
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsAreReadBackInOrderAcrossSegments() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        long before = System.currentTimeMillis();
+        try (Journal journal = new Journal(dir, 256, 1000)) {
+            for (int i = 0; i < 50; i++) {
+                assertTrue(journal.append(Type.values()[i % 3], "user" + i, "{\"n\":" + i + "}"));
+            }
+        }
+        long after = System.currentTimeMillis();
+
+        assertTrue("expected the journal to roll over", Files.exists(dir.resolve(Journal.segmentName(2))));
+
+        List<Record> records = scan(dir, record -> true);
+        assertEquals(50, records.size());
+        for (int i = 0; i < 50; i++) {
+            Record record = records.get(i);
+            assertEquals(Type.values()[i % 3], record.getType());
+            assertEquals("user" + i, record.getKey());
+            assertEquals("{\"n\":" + i + "}", record.getText());
+            assertTrue(record.getTime() >= before && record.getTime() <= after);
+        }
+    }
+
+    @Test
+    public void readerPassesOnlyWhatTheFilterAccepts() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        try (Journal journal = new Journal(dir, 4096, 100)) {
+            journal.append(Type.COMMAND, "alice", "look");
+            journal.append(Type.PULSE, "car1", "F");
+            journal.append(Type.COMMAND, "bob", "go");
+            journal.append(Type.EVENT, "*", "hello");
+        }
+
+        List<Record> commands = scan(dir, record -> record.getType() == Type.COMMAND);
+        assertEquals(2, commands.size());
+        assertEquals("alice", commands.get(0).getKey());
+        assertEquals("bob", commands.get(1).getKey());
+
+        long count = new JournalReader(dir, record -> "car1".equals(record.getKey())).scan(record -> {
+        });
+        assertEquals(1, count);
+    }
+
+    @Test
+    public void segmentHoldsLengthPrefixedRecords() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        try (Journal journal = new Journal(dir, 1024, 10)) {
+            journal.append(Type.PULSE, "car", "\u00ebx");
+        }
+
+        ByteBuffer segment = ByteBuffer.wrap(Files.readAllBytes(dir.resolve("journal-00000001.log")));
+        assertEquals(1024, segment.capacity());
+        byte[] text = "\u00ebx".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Journal.HEADER_BYTES + 3 + text.length, segment.getInt());
+        assertEquals(Type.PULSE.getCode(), segment.get());
+        segment.getLong();
+        assertEquals(3, segment.getShort());
+        byte[] key = new byte[3];
+        segment.get(key);
+        assertEquals("car", new String(key, StandardCharsets.UTF_8));
+        byte[] read = new byte[text.length];
+        segment.get(read);
+        assertEquals("\u00ebx", new String(read, StandardCharsets.UTF_8));
+        // nothing written after it yet
+        assertEquals(0, segment.getInt());
+    }
+
+    @Test
+    public void restartStartsANewSegmentAfterTheLast() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        try (Journal journal = new Journal(dir, 1024, 10)) {
+            journal.append(Type.COMMAND, "alice", "first");
+        }
+        try (Journal journal = new Journal(dir, 1024, 10)) {
+            journal.append(Type.COMMAND, "alice", "second");
+        }
+
+        assertTrue(Files.exists(dir.resolve(Journal.segmentName(2))));
+        List<Record> records = scan(dir, record -> true);
+        assertEquals(2, records.size());
+        assertEquals("first", records.get(0).getText());
+        assertEquals("second", records.get(1).getText());
+    }
+
+    @Test
+    public void recordsTooBigForASegmentAreDropped() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        char[] big = new char[200];
+        Arrays.fill(big, 'x');
+        try (Journal journal = new Journal(dir, 128, 10)) {
+            journal.append(Type.EVENT, "*", new String(big));
+            journal.append(Type.EVENT, "*", "small");
+        }
+
+        List<Record> records = scan(dir, record -> true);
+        assertEquals(1, records.size());
+        assertEquals("small", records.get(0).getText());
+    }
+
+    @Test
+    public void onlyTheNewestSegmentsAreKept() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        try (Journal journal = new Journal(dir, 256, 1000, 2)) {
+            for (int i = 0; i < 50; i++) {
+                journal.append(Type.COMMAND, "user", "{\"n\":" + i + "}");
+            }
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> all = Files.newDirectoryStream(dir)) {
+            all.forEach(files::add);
+        }
+        assertEquals(2, files.size());
+
+        // the records that are left are the newest, still in order
+        List<Record> records = scan(dir, record -> true);
+        assertTrue(records.size() < 50);
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals("{\"n\":" + (50 - records.size() + i) + "}", records.get(i).getText());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void segmentsMustHoldARecord() throws IOException {
+        new Journal(folder.getRoot().toPath(), 8, 10);
+    }
+
+    @Test
+    public void appendAfterCloseIsRefused() throws IOException {
+        Journal journal = new Journal(folder.getRoot().toPath(), 1024, 10);
+        journal.close();
+        assertFalse(journal.append(Type.COMMAND, "alice", "late"));
+    }
+
+    @Test
+    public void segmentNamesAreNumbered() {
+        assertEquals("journal-00000042.log", Journal.segmentName(42));
+        assertEquals(42, Journal.segmentNumber(folder.getRoot().toPath().resolve("journal-00000042.log")));
+        assertEquals(-1, Journal.segmentNumber(folder.getRoot().toPath().resolve("other.log")));
+    }
+
+    private static List<Record> scan(Path dir, Predicate<Record> filter) throws IOException {
+        List<Record> records = new ArrayList<>();
+        new JournalReader(dir, filter).scan(records::add);
+        return records;
+    }
+}
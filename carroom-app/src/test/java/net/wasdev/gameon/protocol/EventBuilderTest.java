@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.wasdev.gameon.protocol.SessionFanout.OverflowPolicy;
+
+public class EventBuilderTest {
+
+    @BeforeClass
+    public static void fanout() {
+        EventBuilder.setFanout(new SessionFanout(16, OverflowPolicy.DROP_OLDEST));
+    }
+
+    // a session that completes every send straight away, recording what it was given
+    private static Session session(List<String> sent) {
+        Map<String, Object> properties = new HashMap<>();
+        RemoteEndpoint.Async remote = (RemoteEndpoint.Async) Proxy.newProxyInstance(EventBuilderTest.class.getClassLoader(),
+                new Class<?>[] { RemoteEndpoint.Async.class }, (proxy, method, args) -> {
+                    sent.add((String) args[0]);
+                    ((SendHandler) args[1]).onResult(new SendResult());
+                    return null;
+                });
+        return (Session) Proxy.newProxyInstance(EventBuilderTest.class.getClassLoader(), new Class<?>[] { Session.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isOpen":
+                            return true;
+                        case "getUserProperties":
+                            return properties;
+                        case "getAsyncRemote":
+                            return remote;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    // the json after the routing prefix
+    private static JsonObject body(EventFrame frame, String routing) {
+        String text = frame.getText();
+        assertEquals(routing, text.substring(0, routing.length()));
+        return Json.createReader(new StringReader(text.substring(routing.length()))).readObject();
+    }
+
+    @Test
+    public void playerFrameGoesToEveryoneWhenThereIsAMessageForThem() {
+        EventFrame frame = EventBuilder.playerFrame("alice", "You have entered the room", "Player Alice has entered the room");
+        JsonObject body = body(frame, "player,*,");
+        assertEquals("event", body.getString("type"));
+        assertEquals("You have entered the room", body.getJsonObject("content").getString("alice"));
+        assertEquals("Player Alice has entered the room", body.getJsonObject("content").getString("*"));
+        assertEquals(EventSequence.current(), body.getJsonNumber("bookmark").longValue());
+        assertNull(frame.getCoalesceKey());
+    }
+
+    @Test
+    public void playerFrameOnlyForThePlayerIsRoutedToThem() {
+        JsonObject body = body(EventBuilder.playerFrame("alice", "Unrecognised command", null), "player,alice,");
+        assertEquals(1, body.getJsonObject("content").size());
+    }
+
+    @Test
+    public void chatAndExitFrames() {
+        JsonObject chat = body(EventBuilder.chatFrame("Alice", "hello"), "player,*,");
+        assertEquals("chat", chat.getString("type"));
+        assertEquals("Alice", chat.getString("username"));
+        assertEquals("hello", chat.getString("content"));
+
+        JsonObject exit = body(EventBuilder.exitFrame("alice", "Run Away!", "n"), "playerLocation,alice,");
+        assertEquals("n", exit.getString("exitId"));
+    }
+
+    @Test
+    public void oneFrameIsSharedByEveryRecipientAndTheReplayBuffer() {
+        long before = EventSequence.current();
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        EventBuilder.chatEvent(Arrays.asList(session(first), session(second)), "Alice", "hello");
+
+        assertEquals(1, first.size());
+        assertSame(first.get(0), second.get(0));
+        List<EventFrame> replayed = EventBuilder.getReplayBuffer().since(before, "bob");
+        assertEquals(1, replayed.size());
+        assertSame(first.get(0), replayed.get(0).getText());
+    }
+
+    @Test
+    public void locationFramesCanBeCoalesced() {
+        EventFrame frame = EventBuilder.locationFrame("alice", "CarRoom", "A room", "Cars", new HashMap<>(),
+                Arrays.asList("car"), new ArrayList<>(), new HashMap<>());
+        JsonObject body = body(frame, "player,alice,");
+        assertEquals("location", body.getString("type"));
+        assertEquals("location", frame.getCoalesceKey());
+    }
+}
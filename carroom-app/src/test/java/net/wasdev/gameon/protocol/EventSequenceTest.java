@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class EventSequenceTest {
+
+    @Test
+    public void bookmarksOnlyGoUp() {
+        long previous = EventSequence.next();
+        for (int i = 0; i < 1000; i++) {
+            long next = EventSequence.next();
+            assertTrue(next > previous);
+            assertEquals(next, EventSequence.current());
+            previous = next;
+        }
+    }
+
+    @Test
+    public void startsFromTheClockInMicroseconds() {
+        long micros = System.currentTimeMillis() * 1000;
+        long current = EventSequence.current();
+        // started when the class was loaded, and fewer than a million handed out since
+        assertTrue(current <= micros + 1_000_000);
+        assertTrue(current > micros - 3600_000_000L);
+        // JavaScript numbers hold integers exactly up to 2^53
+        assertTrue(current < (1L << 53));
+    }
+
+    @Test
+    public void bookmarksAreUniqueAcrossThreads() throws InterruptedException {
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    seen.add(EventSequence.next());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, seen.size());
+    }
+}
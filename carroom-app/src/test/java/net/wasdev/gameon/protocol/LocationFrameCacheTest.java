@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocationFrameCacheTest {
+
+    private Map<String, String> exits;
+    private List<String> objects;
+    private List<String> inventory;
+    private Map<String, String> commands;
+    private LocationFrameCache cache;
+
+    @Before
+    public void room() {
+        exits = new HashMap<>();
+        exits.put("N", "A door leads north");
+        objects = new ArrayList<>(Arrays.asList("car"));
+        inventory = new ArrayList<>();
+        commands = new HashMap<>();
+        commands.put("/drive", "Drive the car");
+        cache = new LocationFrameCache("car-room", "The Car Room", "A room with cars in it", exits, objects,
+                inventory, commands);
+    }
+
+    private static JsonObject body(EventFrame frame, String senderId) {
+        String routing = "player," + senderId + ",";
+        assertTrue(frame.getText(), frame.getText().startsWith(routing));
+        return Json.createReader(new StringReader(frame.getText().substring(routing.length()))).readObject();
+    }
+
+    @Test
+    public void splicedFrameMatchesTheFullLocationEvent() {
+        EventFrame frame = cache.frameFor("alice");
+        JsonObject spliced = body(frame, "alice");
+
+        assertEquals(EventSequence.current(), spliced.getJsonNumber("bookmark").longValue());
+        assertEquals("location", frame.getCoalesceKey());
+
+        JsonObject expected = EventBuilder.locationContent("car-room", "The Car Room", "A room with cars in it",
+                exits, objects, inventory, commands)
+                .add("bookmark", spliced.getJsonNumber("bookmark").longValue())
+                .build();
+        assertEquals(expected, spliced);
+    }
+
+    @Test
+    public void everyFrameHasItsOwnRoutingAndBookmark() {
+        long before = EventSequence.current();
+        EventFrame first = cache.frameFor("alice");
+        EventFrame second = cache.frameFor("bob");
+
+        long firstBookmark = body(first, "alice").getJsonNumber("bookmark").longValue();
+        long secondBookmark = body(second, "bob").getJsonNumber("bookmark").longValue();
+        assertTrue(firstBookmark > before);
+        assertTrue(secondBookmark > firstBookmark);
+        assertSame(first, EventBuilder.getReplayBuffer().since(before, "alice").get(0));
+    }
+
+    @Test
+    public void invalidatePicksUpChangedCollections() {
+        cache.frameFor("alice");
+        exits.put("S", "A door leads south");
+        objects.remove("car");
+
+        // still the cached description until someone says otherwise
+        assertEquals(1, body(cache.frameFor("alice"), "alice").getJsonObject("exits").size());
+
+        cache.invalidate();
+        JsonObject refreshed = body(cache.frameFor("alice"), "alice");
+        assertEquals("A door leads south", refreshed.getJsonObject("exits").getString("S"));
+        assertEquals(0, refreshed.getJsonArray("objects").size());
+    }
+}
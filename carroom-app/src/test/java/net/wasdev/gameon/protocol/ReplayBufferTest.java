@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ReplayBufferTest {
+
+    private static List<String> texts(List<EventFrame> frames) {
+        List<String> texts = new ArrayList<>();
+        for (EventFrame frame : frames) {
+            texts.add(frame.getText());
+        }
+        return texts;
+    }
+
+    // record an event, returning its bookmark
+    private static long add(ReplayBuffer buffer, String target, String text) {
+        long bookmark = EventSequence.next();
+        buffer.add(bookmark, target, new EventFrame(text, null));
+        return bookmark;
+    }
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(2, new ReplayBuffer(1).getCapacity());
+        assertEquals(4, new ReplayBuffer(3).getCapacity());
+        assertEquals(4, new ReplayBuffer(4).getCapacity());
+        assertEquals(1024, new ReplayBuffer(1000).getCapacity());
+    }
+
+    @Test
+    public void replaysWhatThePlayerMissed() {
+        ReplayBuffer buffer = new ReplayBuffer(16);
+        long seen = add(buffer, "*", "before");
+        add(buffer, "*", "everyone");
+        add(buffer, "alice", "for alice");
+        add(buffer, "bob", "for bob");
+        assertEquals("[everyone, for alice]", texts(buffer.since(seen, "alice")).toString());
+        assertEquals("[everyone, for bob]", texts(buffer.since(seen, "bob")).toString());
+    }
+
+    @Test
+    public void nothingMissedIsAnEmptyList() {
+        ReplayBuffer buffer = new ReplayBuffer(16);
+        add(buffer, "*", "event");
+        assertTrue(buffer.since(EventSequence.current(), "alice").isEmpty());
+    }
+
+    @Test
+    public void eventsWithoutATargetAreNeverReplayed() {
+        ReplayBuffer buffer = new ReplayBuffer(16);
+        long seen = EventSequence.current();
+        // e.g. a reply to a room message that came without a user id
+        add(buffer, null, "for nobody");
+        add(buffer, "alice", "for alice");
+        assertEquals("[for alice]", texts(buffer.since(seen, "alice")).toString());
+    }
+
+    @Test
+    public void eventsOverwrittenByTheRingAreTooOld() {
+        ReplayBuffer buffer = new ReplayBuffer(4);
+        List<Long> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            bookmarks.add(add(buffer, "*", "event " + i));
+        }
+        assertNull(buffer.since(bookmarks.get(4), "alice"));
+        assertEquals("[event 7, event 8, event 9]", texts(buffer.since(bookmarks.get(6), "alice")).toString());
+        assertEquals("[event 6, event 7, event 8, event 9]", texts(buffer.since(bookmarks.get(5), "alice")).toString());
+    }
+
+    @Test
+    public void bookmarksFromTheFutureAreNotOurs() {
+        ReplayBuffer buffer = new ReplayBuffer(4);
+        add(buffer, "*", "event");
+        assertNull(buffer.since(EventSequence.current() + 1, "alice"));
+    }
+
+    @Test
+    public void eventsFromOtherPartsOfTheRoomAreSkipped() {
+        ReplayBuffer buffer = new ReplayBuffer(16);
+        long seen = add(buffer, "*", "before");
+        // a bookmark handed out but recorded somewhere else
+        EventSequence.next();
+        add(buffer, "alice", "after");
+        assertEquals("[after]", texts(buffer.since(seen, "alice")).toString());
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import net.wasdev.gameon.protocol.RoomMessage.Type;
+
+public class RoomMessageDecoderTest {
+
+    private static final String BODY = "{\"username\":\"Alice\",\"userId\":\"alice\",\"content\":\"/look\",\"bookmark\":\"12\"}";
+
+    @Test
+    public void routings() {
+        assertEquals(Type.ROOM, RoomMessageDecoder.decode("room,car-room," + BODY).getType());
+        assertEquals(Type.HELLO, RoomMessageDecoder.decode("roomHello,car-room," + BODY).getType());
+        assertEquals(Type.GOODBYE, RoomMessageDecoder.decode("roomGoodbye,car-room," + BODY).getType());
+
+        assertEquals(Type.UNKNOWN, RoomMessageDecoder.decode("player,car-room," + BODY).getType());
+        assertEquals(Type.UNKNOWN, RoomMessageDecoder.decode("roomHelloThere,car-room," + BODY).getType());
+        assertEquals(Type.UNKNOWN, RoomMessageDecoder.decode("roo,car-room," + BODY).getType());
+        assertEquals(Type.UNKNOWN, RoomMessageDecoder.decode("ROOM,car-room," + BODY).getType());
+    }
+
+    @Test
+    public void fields() {
+        RoomMessage message = RoomMessageDecoder.decode("room,car-room," + BODY);
+        assertEquals("alice", message.getUserId());
+        assertEquals("Alice", message.getUsername());
+        assertEquals("/look", message.getContent());
+        assertEquals("12", message.getBookmark());
+    }
+
+    @Test
+    public void malformedFramesAreUnknown() {
+        assertEquals(Type.UNKNOWN, RoomMessageDecoder.decode("").getType());
+        assertEquals(Type.UNKNOWN, RoomMessageDecoder.decode("room,car-room,").getType());
+        assertEquals(Type.UNKNOWN, RoomMessageDecoder.decode("room" + BODY).getType());
+        assertEquals(Type.UNKNOWN, RoomMessageDecoder.decode("room,car-room" + BODY).getType());
+        // the commas in the body are not the routing
+        assertEquals(Type.UNKNOWN, RoomMessageDecoder.decode("room" + BODY + ",x,").getType());
+
+        RoomMessage message = RoomMessageDecoder.decode("room,car-room" + BODY);
+        assertNull(message.getUserId());
+        assertNull(message.getContent());
+    }
+
+    @Test
+    public void nestedFieldsAreIgnored() {
+        RoomMessage message = RoomMessageDecoder.decode("room,car-room,{\"extra\":{\"userId\":\"mallory\",\"content\":[\"x\"]},"
+                + "\"content\":{\"alice\":\"hi\"},\"userId\":\"alice\",\"list\":[{\"username\":\"Mallory\"}],\"username\":\"Alice\"}");
+        assertEquals("alice", message.getUserId());
+        assertEquals("Alice", message.getUsername());
+        assertNull(message.getContent());
+        assertNull(message.getBookmark());
+    }
+
+    @Test
+    public void scalarValuesAreReadAsText() {
+        RoomMessage message = RoomMessageDecoder.decode("roomHello,car-room,{\"userId\":\"alice\",\"bookmark\":42,"
+                + "\"username\":null,\"content\":true}");
+        assertEquals("42", message.getBookmark());
+        assertEquals("null", message.getUsername());
+        assertEquals("true", message.getContent());
+    }
+
+    @Test
+    public void messageIsReusedAndReset() {
+        RoomMessage first = RoomMessageDecoder.decode("room,car-room," + BODY);
+        RoomMessage second = RoomMessageDecoder.decode("roomGoodbye,car-room,{\"userId\":\"bob\"}");
+        assertSame(first, second);
+        assertEquals(Type.GOODBYE, second.getType());
+        assertEquals("bob", second.getUserId());
+        assertNull(second.getUsername());
+        assertNull(second.getContent());
+        assertNull(second.getBookmark());
+    }
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.junit.Test;
+
+import net.wasdev.gameon.protocol.SessionFanout.OverflowPolicy;
+
+public class SessionFanoutTest {
+
+    /**
+     * A session whose sends complete when the test says so, or straight away on
+     * the sending thread if it is told to.
+     */
+    private static final class Peer {
+        final List<String> received = new ArrayList<>();
+        final ArrayDeque<SendHandler> waiting = new ArrayDeque<>();
+        final Map<String, Object> properties = new HashMap<>();
+        final List<Integer> sendDepths = new ArrayList<>();
+        boolean open = true;
+        boolean inline = false;
+        CloseReason closedWith;
+        final Session session;
+
+        Peer() {
+            RemoteEndpoint.Async remote = (RemoteEndpoint.Async) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { RemoteEndpoint.Async.class }, (proxy, method, args) -> {
+                        if (method.getName().equals("sendText") && args.length == 2) {
+                            received.add((String) args[0]);
+                            sendDepths.add(Thread.currentThread().getStackTrace().length);
+                            if (inline) {
+                                ((SendHandler) args[1]).onResult(new SendResult());
+                            } else {
+                                waiting.add((SendHandler) args[1]);
+                            }
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    });
+            session = (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Session.class },
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "isOpen":
+                                return open;
+                            case "getUserProperties":
+                                return properties;
+                            case "getAsyncRemote":
+                                return remote;
+                            case "close":
+                                open = false;
+                                closedWith = (CloseReason) args[0];
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+
+        void completeAll() {
+            SendHandler handler;
+            while ((handler = waiting.poll()) != null) {
+                handler.onResult(new SendResult());
+            }
+        }
+
+        void fail() {
+            waiting.poll().onResult(new SendResult(new IOException("gone")));
+        }
+    }
+
+    @Test
+    public void dropOldestKeepsTheNewestFrames() {
+        SessionFanout fanout = new SessionFanout(2, OverflowPolicy.DROP_OLDEST);
+        Peer peer = new Peer();
+        for (String message : Arrays.asList("1", "2", "3", "4")) {
+            assertTrue(fanout.send(peer.session, message));
+        }
+        peer.completeAll();
+
+        assertEquals(Arrays.asList("1", "3", "4"), peer.received);
+        assertEquals(1, fanout.getDroppedOldestCount());
+        assertEquals(3, fanout.getSentCount());
+        assertTrue(peer.open);
+    }
+
+    @Test
+    public void coalesceReplacesAQueuedFrameWithTheSameKey() {
+        SessionFanout fanout = new SessionFanout(2, OverflowPolicy.COALESCE);
+        Peer peer = new Peer();
+        fanout.send(peer.session, "first");
+        fanout.send(peer.session, "old location", "location");
+        fanout.send(peer.session, "chat");
+        fanout.send(peer.session, "new location", "location");
+        peer.completeAll();
+
+        assertEquals(Arrays.asList("first", "chat", "new location"), peer.received);
+        assertEquals(1, fanout.getCoalescedCount());
+        assertEquals(0, fanout.getDroppedOldestCount());
+    }
+
+    @Test
+    public void coalesceDropsTheOldestWhenThereIsNothingToMerge() {
+        SessionFanout fanout = new SessionFanout(2, OverflowPolicy.COALESCE);
+        Peer peer = new Peer();
+        for (String message : Arrays.asList("1", "2", "3", "4")) {
+            fanout.send(peer.session, message, null);
+        }
+        peer.completeAll();
+
+        assertEquals(Arrays.asList("1", "3", "4"), peer.received);
+        assertEquals(0, fanout.getCoalescedCount());
+        assertEquals(1, fanout.getDroppedOldestCount());
+    }
+
+    @Test
+    public void disconnectClosesTheSlowSession() {
+        SessionFanout fanout = new SessionFanout(1, OverflowPolicy.DISCONNECT);
+        Peer slow = new Peer();
+        Peer fast = new Peer();
+        fast.inline = true;
+        List<Session> both = Arrays.asList(slow.session, fast.session);
+        fanout.broadcast(both, "1");
+        fanout.broadcast(both, "2");
+        fanout.broadcast(both, "3");
+
+        assertFalse(slow.open);
+        assertEquals(CloseReason.CloseCodes.TRY_AGAIN_LATER, slow.closedWith.getCloseCode());
+        assertEquals(1, fanout.getDisconnectedCount());
+        assertTrue(slow.properties.isEmpty());
+        assertFalse(fanout.send(slow.session, "4"));
+
+        // the other session never noticed
+        assertTrue(fast.open);
+        assertEquals(Arrays.asList("1", "2", "3"), fast.received);
+    }
+
+    @Test
+    public void failedSendDrainsAndRemovesTheQueue() {
+        SessionFanout fanout = new SessionFanout(8, OverflowPolicy.DROP_OLDEST);
+        Peer peer = new Peer();
+        fanout.send(peer.session, "1");
+        fanout.send(peer.session, "2");
+        fanout.send(peer.session, "3");
+        peer.fail();
+
+        assertEquals(1, fanout.getFailedCount());
+        assertEquals(Arrays.asList("1"), peer.received);
+        assertFalse(peer.open);
+        assertEquals(CloseReason.CloseCodes.UNEXPECTED_CONDITION, peer.closedWith.getCloseCode());
+        assertTrue(peer.properties.isEmpty());
+        assertNull(peer.waiting.poll());
+    }
+
+    @Test
+    public void sendsCompletedInlineDoNotRecurse() {
+        SessionFanout fanout = new SessionFanout(10000, OverflowPolicy.DROP_OLDEST);
+        Peer peer = new Peer();
+        for (int i = 0; i < 1000; i++) {
+            fanout.send(peer.session, "m" + i);
+        }
+        // the container now completes each send before sendText returns
+        peer.inline = true;
+        peer.completeAll();
+
+        assertEquals(1000, peer.received.size());
+        assertEquals(1000, fanout.getSentCount());
+        int first = peer.sendDepths.get(1);
+        for (int depth : peer.sendDepths.subList(1, 1000)) {
+            assertEquals(first, depth);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import net.wasdev.gameon.metrics.MetricsRegistry;
+
+public class AsciiCacheTest {
+
+    private final AsciiCache cache = new AsciiCache(new AsciiRenderer(), 2);
+
+    @Test
+    public void secondRenderIsAHit() throws IOException {
+        MetricsRegistry metrics = new MetricsRegistry();
+        cache.registerMetrics(metrics, "snapshot");
+        Snapshot snapshot = snapshot(64, 48, 0x808080);
+
+        String first = cache.render(snapshot, 32);
+        assertTrue(first.startsWith(AsciiRenderer.PRE_OPEN));
+        assertTrue(first.endsWith(AsciiRenderer.PRE_CLOSE));
+        assertSame(first, cache.render(snapshot, 32));
+
+        Map<String, Long> values = metrics.snapshot();
+        assertEquals(Long.valueOf(1), values.get("snapshot.cache.hits"));
+        assertEquals(Long.valueOf(1), values.get("snapshot.cache.misses"));
+        assertEquals(Long.valueOf(1), values.get("snapshot.cache.size"));
+    }
+
+    @Test
+    public void sameImageSentAgainIsAHit() throws IOException {
+        String first = cache.render(snapshot(64, 48, 0x102030), 32);
+        assertSame(first, cache.render(snapshot(64, 48, 0x102030), 32));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void otherWidthIsRenderedSeparately() throws IOException {
+        Snapshot snapshot = snapshot(64, 48, 0xffffff);
+        String narrow = cache.render(snapshot, 16);
+        String wide = cache.render(snapshot, 32);
+        assertNotSame(narrow, wide);
+        assertEquals(16, narrow.split("\n")[1].length());
+        assertEquals(32, wide.split("\n")[1].length());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsDropped() throws IOException {
+        Snapshot a = snapshot(32, 32, 0x000000);
+        Snapshot b = snapshot(32, 32, 0x7f7f7f);
+        Snapshot c = snapshot(32, 32, 0xffffff);
+
+        String artA = cache.render(a, 16);
+        String artB = cache.render(b, 16);
+        // a is now more recent than b
+        assertSame(artA, cache.render(a, 16));
+        cache.render(c, 16);
+
+        assertEquals(2, cache.size());
+        assertSame(artA, cache.render(a, 16));
+        assertNotSame(artB, cache.render(b, 16));
+    }
+
+    @Test
+    public void oversizedPicturesAreRefused() throws IOException {
+        try {
+            snapshot(10, Snapshot.MAX_DIMENSION + 1, 0);
+            fail("expected the picture to be refused");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(String.valueOf(Snapshot.MAX_DIMENSION)));
+        }
+    }
+
+    private static Snapshot snapshot(int width, int height, int rgb) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return Snapshot.read(png.toByteArray());
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+public class RequestSignerTest {
+
+    private static final String KEY = "fish";
+    private static final String ID = "game-on.org";
+    private static final String DATE = "2016-05-05T10:15:30.123Z";
+    // ASCII, two and three byte characters, and a surrogate pair
+    private static final String BODY = "{\"name\":\"car\",\"text\":\"caf\u00e9 \u20ac \ud83d\ude97\"}";
+
+    private static String hmac(String key, String... values) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        for (String value : values) {
+            mac.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return Base64.getEncoder().encodeToString(mac.doFinal());
+    }
+
+    private static String sha256(String text) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return Base64.getEncoder().encodeToString(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void signMatchesBuildHmac() throws Exception {
+        RequestSigner signer = new RequestSigner(KEY);
+        String bodyHash = SecurityUtils.buildHash(BODY);
+        String expected = hmac(KEY, ID, DATE, bodyHash);
+        assertEquals(expected, SecurityUtils.buildHmac(Arrays.asList(ID, DATE, bodyHash), KEY));
+        assertEquals(expected, signer.sign(ID, DATE, bodyHash));
+        // and again, with the engine the first signature put back
+        assertEquals(expected, signer.sign(new StringBuilder(ID), DATE, bodyHash));
+        assertNotEquals(expected, new RequestSigner("chips").sign(ID, DATE, bodyHash));
+    }
+
+    @Test
+    public void hashMatchesBuildHash() throws Exception {
+        String expected = sha256(BODY);
+        assertEquals(expected, SecurityUtils.buildHash(BODY));
+        RequestSigner signer = new RequestSigner(KEY);
+        assertEquals(expected, signer.hash(BODY));
+        assertEquals(expected, signer.hash(new StringBuilder(BODY)));
+    }
+
+    @Test
+    public void longTextIsHashedAcrossChunks() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 2000) {
+            text.append(BODY);
+        }
+        assertEquals(sha256(text.toString()), new RequestSigner(KEY).hash(text));
+    }
+
+    @Test
+    public void hashingMatchesBuildHash() throws Exception {
+        RequestSigner signer = new RequestSigner(KEY);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DigestOutputStream hashing = signer.hashing(body);
+        // hashing something else meanwhile does not disturb the stream
+        signer.sign(ID, DATE, signer.hash("other"));
+        hashing.write(BODY.getBytes(StandardCharsets.UTF_8));
+        assertEquals(SecurityUtils.buildHash(BODY), RequestSigner.hashOf(hashing));
+        assertEquals(BODY, new String(body.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void oneSignerCanBeSharedBetweenThreads() throws Exception {
+        RequestSigner signer = new RequestSigner(KEY);
+        String expected = hmac(KEY, ID, DATE, BODY);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] results = new Future<?>[4];
+            for (int t = 0; t < results.length; t++) {
+                results[t] = pool.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        assertEquals(expected, signer.sign(ID, DATE, BODY));
+                    }
+                });
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.bench;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.wasdev.gameon.render.AsciiCache;
+import net.wasdev.gameon.render.AsciiRenderer;
+import net.wasdev.gameon.render.Snapshot;
+
+/**
+ * Rendering a 640x480 car snapshot for <code>/view</code>: across the common
+ * fork/join pool, on a single thread, and from the render cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AsciiRenderBenchmark {
+
+    private Snapshot snapshot;
+    private AsciiRenderer parallel;
+    private ForkJoinPool single;
+    private AsciiRenderer sequential;
+    private AsciiCache cache;
+
+    @Setup
+    public void setup() throws IOException {
+        BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 640, 480);
+        g.setPaint(new GradientPaint(0, 0, Color.BLACK, 640, 480, Color.LIGHT_GRAY));
+        g.fillOval(80, 40, 480, 400);
+        g.dispose();
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", jpeg);
+        snapshot = Snapshot.read(jpeg.toByteArray());
+
+        parallel = new AsciiRenderer();
+        single = new ForkJoinPool(1);
+        sequential = new AsciiRenderer(single);
+        cache = new AsciiCache(parallel, 4);
+    }
+
+    @TearDown
+    public void tearDown() {
+        single.shutdown();
+    }
+
+    @Benchmark
+    public String render() {
+        return parallel.render(snapshot.getImage(), 114);
+    }
+
+    @Benchmark
+    public String renderSingleThread() {
+        return sequential.render(snapshot.getImage(), 114);
+    }
+
+    @Benchmark
+    public String renderCached() {
+        return cache.render(snapshot, 114);
+    }
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.bench;
+
+import java.lang.reflect.Proxy;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.spi.InitialContextFactory;
+
+/**
+ * Stands in for Liberty's JNDI entries (see server.xml) when the room runs
+ * inside a benchmark. Install it with {@link #install(Map)}.
+ */
+public class BenchContextFactory implements InitialContextFactory {
+    private static final Map<String, Object> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Make new InitialContexts serve the given entries.
+     */
+    public static void install(Map<String, Object> values) {
+        entries.putAll(values);
+        System.setProperty(Context.INITIAL_CONTEXT_FACTORY, BenchContextFactory.class.getName());
+    }
+
+    @Override
+    public Context getInitialContext(Hashtable<?, ?> environment) {
+        return (Context) Proxy.newProxyInstance(Context.class.getClassLoader(), new Class<?>[] { Context.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "lookup":
+                            Object value = entries.get(String.valueOf(args[0]));
+                            if (value == null) {
+                                throw new NameNotFoundException(String.valueOf(args[0]));
+                            }
+                            return value;
+                        case "close":
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "BenchContext" + entries;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
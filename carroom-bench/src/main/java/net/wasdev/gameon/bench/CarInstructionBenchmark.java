@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.wasdev.gameon.carroom.BinaryCarFrameCodec;
+import net.wasdev.gameon.carroom.CarDirection;
+import net.wasdev.gameon.carroom.CarFrame;
+import net.wasdev.gameon.carroom.CarFrameCodec;
+import net.wasdev.gameon.carroom.CarInstruction;
+
+/**
+ * Encoding an instruction for the car. Each instruction is encoded once when it
+ * is queued and the frame is then sent once per pulse, so {@link #toJSON()} is
+ * the per-pulse cost and the create benchmarks the per-command cost in each
+ * format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CarInstructionBenchmark {
+
+    private static final String USERID = "dummy.DevUser";
+
+    @Param({ "FORWARDS", "LEFT" })
+    public CarDirection direction;
+
+    private final CarFrameCodec binary = new BinaryCarFrameCodec();
+    private CarInstruction instruction;
+
+    @Setup
+    public void setup() {
+        instruction = new CarInstruction(USERID, direction, 5);
+    }
+
+    @Benchmark
+    public String toJSON() {
+        return instruction.toJSON();
+    }
+
+    @Benchmark
+    public String createAndEncode() {
+        return new CarInstruction(USERID, direction, 5).toJSON();
+    }
+
+    @Benchmark
+    public CarFrame createAndEncodeJson() {
+        return CarFrameCodec.JSON.encode(new CarInstruction(USERID, direction, 5));
+    }
+
+    @Benchmark
+    public CarFrame createAndEncodeBinary() {
+        return binary.encode(new CarInstruction(USERID, direction, 5));
+    }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.bench;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.wasdev.gameon.protocol.EventBuilder;
+import net.wasdev.gameon.protocol.EventFrame;
+import net.wasdev.gameon.protocol.LocationFrameCache;
+
+/**
+ * Building each kind of outbound event, up to the frame text that is queued
+ * for the sessions. Nothing is sent.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBuilderBenchmark {
+
+    private static final String USERID = "dummy.DevUser";
+    private static final String DESCRIPTION = "There is simple wooden table in the centre of the room, there is the smell of burning rubber in the air.\n\n"
+            + "Commands are : \n/left <lock 0 - 100>\n/right <lock 0 - 100>\n/forwards <seconds 0 - 10>\n/backwards <seconds 0 - 10>\n/car <car number to drive>\n/view <width 20 - 200>\n";
+
+    private final Map<String, String> exits = new LinkedHashMap<>();
+    private final List<String> objects = Arrays.asList("Remote control car");
+    private LocationFrameCache location;
+
+    @Setup
+    public void setup() {
+        exits.put("n", "A Large doorway to the north");
+        exits.put("s", "A winding path leading off to the south");
+        exits.put("e", "An overgrown road, covered in brambles");
+        exits.put("w", "A shiny metal door, with a bright red handle");
+        exits.put("u", "A spiral set of stairs, leading upward into the ceiling");
+        exits.put("d", "A tunnel, leading down into the earth");
+        location = new LocationFrameCache(Messages.ROOM_ID, "A room with a remote control car", DESCRIPTION, exits,
+                objects, Collections.emptyList(), Collections.emptyMap());
+    }
+
+    @Benchmark
+    public String playerFrame() {
+        return EventBuilder.playerFrame(USERID, "You have entered the room", "Player DevUser has entered the room")
+                .getText();
+    }
+
+    @Benchmark
+    public String roomFrame() {
+        return EventBuilder.roomFrame("The car has been driven into the wall").getText();
+    }
+
+    @Benchmark
+    public String chatFrame() {
+        return EventBuilder.chatFrame("DevUser", "Has anyone seen where the car went? It was here a minute ago.")
+                .getText();
+    }
+
+    @Benchmark
+    public String exitFrame() {
+        return EventBuilder.exitFrame(USERID, "Run Away!", "n").getText();
+    }
+
+    @Benchmark
+    public String locationFrame() {
+        EventFrame frame = EventBuilder.locationFrame(USERID, Messages.ROOM_ID, "A room with a remote control car",
+                DESCRIPTION, exits, objects, Collections.emptyList(), Collections.emptyMap());
+        return frame.getText();
+    }
+
+    @Benchmark
+    public String cachedLocationFrame() {
+        return location.frameFor(USERID).getText();
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.bench;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.JsonValue.ValueType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.wasdev.gameon.protocol.RoomMessage;
+import net.wasdev.gameon.protocol.RoomMessageDecoder;
+
+/**
+ * Compares decoding an inbound mediator message with {@link RoomMessageDecoder}
+ * against the original split-then-read-a-JsonObject approach. Run with
+ * <code>-prof gc</code> and compare <code>gc.alloc.rate.norm</code>, the bytes
+ * allocated per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InboundDecodeBenchmark {
+
+    @Param({ "hello", "command", "chat" })
+    public String kind;
+
+    private String message;
+
+    @Setup
+    public void setup() {
+        switch (kind) {
+            case "hello":
+                message = Messages.hello("dummy.DevUser", "DevUser");
+                break;
+            case "command":
+                message = Messages.room("dummy.DevUser", "DevUser", "/forwards 5");
+                break;
+            default:
+                message = Messages.room("dummy.DevUser", "DevUser",
+                        "Has anyone seen where the car went? It was here a minute ago.");
+                break;
+        }
+    }
+
+    @Benchmark
+    public void streamingDecoder(Blackhole bh) {
+        RoomMessage msg = RoomMessageDecoder.decode(message);
+        bh.consume(msg.getType());
+        bh.consume(msg.getUserId());
+        bh.consume(msg.getUsername());
+        bh.consume(msg.getContent());
+    }
+
+    @Benchmark
+    public void splitAndReadObject(Blackhole bh) {
+        String[] contents = splitRouting(message);
+        bh.consume(contents[0]);
+        JsonObject msg = Json.createReader(new StringReader(contents[2])).readObject();
+        bh.consume(getValue(msg.get("userId")));
+        bh.consume(getValue(msg.get("username")));
+        JsonValue content = msg.get("content");
+        bh.consume(content == null ? null : getValue(content));
+    }
+
+    // the original CarRoom decoding path, kept here as the baseline
+
+    static String[] splitRouting(String message) {
+        ArrayList<String> list = new ArrayList<>();
+
+        int brace = message.indexOf('{');
+        int i = 0;
+        int j = message.indexOf(',');
+        while (j > 0 && j < brace) {
+            list.add(message.substring(i, j));
+            i = j + 1;
+            j = message.indexOf(',', i);
+        }
+        list.add(message.substring(i));
+
+        return list.toArray(new String[] {});
+    }
+
+    private static String getValue(JsonValue value) {
+        if (value.getValueType().equals(ValueType.STRING)) {
+            JsonString s = (JsonString) value;
+            return s.getString();
+        } else {
+            return value.toString();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.bench;
+
+/**
+ * Inbound messages as the mediator sends them to the room.
+ */
+public class Messages {
+    public static final String ROOM_ID = "CarRoom";
+
+    public static String hello(String userId, String username) {
+        return "roomHello," + ROOM_ID + ",{\"username\":\"" + username + "\",\"userId\":\"" + userId
+                + "\",\"version\":1}";
+    }
+
+    public static String goodbye(String userId, String username) {
+        return "roomGoodbye," + ROOM_ID + ",{\"username\":\"" + username + "\",\"userId\":\"" + userId + "\"}";
+    }
+
+    public static String room(String userId, String username, String content) {
+        return "room," + ROOM_ID + ",{\"username\":\"" + username + "\",\"userId\":\"" + userId
+                + "\",\"content\":\"" + content + "\"}";
+    }
+}
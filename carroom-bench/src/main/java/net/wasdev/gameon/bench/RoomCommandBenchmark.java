@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.wasdev.gameon.carroom.CarControllerListener;
+import net.wasdev.gameon.carroom.CarRoom;
+
+/**
+ * A room command from the moment it arrives on the socket until its replies are
+ * queued: decoding, dispatch and building the response. Sends complete straight
+ * away (see {@link StubSession}) and the cars are no-op drivers, so only the
+ * room's own work is measured.
+ *
+ * Every command is handed to Log, with sampling and rate limits turned off, so
+ * results are comparable however LOG_SAMPLING and LOG_RATE_LIMIT are set in
+ * production. Log messages are queued by the command and written by Log's own
+ * thread, so the formatting and writing are not part of the measured time.
+ * What is still printed to stdout is swallowed so the JMH output stays readable.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoomCommandBenchmark {
+
+    private static final String USERID = "dummy.DevUser";
+    private static final String USERNAME = "DevUser";
+
+    @Param({ "chat", "look", "drive", "go" })
+    public String command;
+
+    private final CarControllerListener cars = new CarControllerListener();
+    private PrintStream stdout;
+    private CarRoom room;
+    private StubSession session;
+    private String message;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Map<String, Object> jndi = new HashMap<>();
+        jndi.put("carDriver", "noop");
+        jndi.put("carEndPoint", "localhost:9081/LibertyCar/control");
+        // log every command and pulse, whatever the production defaults are
+        jndi.put("logSampling", "command:1,pulse:1,car:1");
+        jndi.put("logRateLimit", "command:0,pulse:0,car:0");
+        BenchContextFactory.install(jndi);
+
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        cars.contextInitialized(null);
+
+        room = new CarRoom();
+        session = new StubSession("bench-" + command);
+        room.onOpen(session, null);
+        room.receiveMessage(Messages.hello(USERID, USERNAME), session);
+
+        switch (command) {
+            case "look":
+                message = Messages.room(USERID, USERNAME, "/look");
+                break;
+            case "drive":
+                message = Messages.room(USERID, USERNAME, "/forwards 5");
+                break;
+            case "go":
+                message = Messages.room(USERID, USERNAME, "/go n");
+                break;
+            default:
+                message = Messages.room(USERID, USERNAME,
+                        "Has anyone seen where the car went? It was here a minute ago.");
+                break;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        room.onClose(session, null);
+        cars.contextDestroyed(null);
+        System.setOut(stdout);
+        System.out.println("Room sent " + session.getMessageCount() + " messages, " + session.getCharacterCount()
+                + " characters");
+    }
+
+    @Benchmark
+    public StubSession receiveMessage() throws IOException {
+        room.receiveMessage(message, session);
+        return session;
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.bench;
+
+import java.io.UnsupportedEncodingException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.wasdev.gameon.security.RequestSigner;
+import net.wasdev.gameon.security.SecurityUtils;
+
+/**
+ * Signing a registration request, as RegistrationListener does: the SHA-256
+ * body hash, then the HMAC over the user id, date and body hash. The
+ * <code>signer</code> benchmarks do the same with one {@link RequestSigner}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityBenchmark {
+
+    private static final String USERID = "dummy.DevUser";
+    private static final String KEY = "aSecretKeyThatIsLongEnoughToBeRealistic0123456789=";
+
+    private String payload;
+    private List<String> stuffToHash;
+    private RequestSigner signer;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException, InvalidKeyException, UnsupportedEncodingException {
+        payload = "{\"name\":\"CarRoom\",\"fullName\":\"A room with a remote control car\","
+                + "\"description\":\"There is simple wooden table in the centre of the room, there is the smell of burning rubber in the air.\","
+                + "\"doors\":{\"n\":\"A Large doorway to the north\",\"s\":\"A winding path leading off to the south\","
+                + "\"e\":\"An overgrown road, covered in brambles\",\"w\":\"A shiny metal door, with a bright red handle\","
+                + "\"u\":\"A spiral set of stairs, leading upward into the ceiling\",\"d\":\"A tunnel, leading down into the earth\"},"
+                + "\"connectionDetails\":{\"type\":\"websocket\",\"target\":\"ws://localhost:9080/rooms/carRoom\"}}";
+        stuffToHash = Arrays.asList(USERID, "2016-05-05T10:15:30.123Z", SecurityUtils.buildHash(payload));
+        signer = new RequestSigner(KEY);
+    }
+
+    @Benchmark
+    public String buildHash() throws NoSuchAlgorithmException, UnsupportedEncodingException {
+        return SecurityUtils.buildHash(payload);
+    }
+
+    @Benchmark
+    public String buildHmac() throws NoSuchAlgorithmException, InvalidKeyException, UnsupportedEncodingException {
+        return SecurityUtils.buildHmac(stuffToHash, KEY);
+    }
+
+    @Benchmark
+    public String signerHash() {
+        return signer.hash(payload);
+    }
+
+    @Benchmark
+    public String signerSign() {
+        return signer.sign(USERID, "2016-05-05T10:15:30.123Z", stuffToHash.get(2));
+    }
+}
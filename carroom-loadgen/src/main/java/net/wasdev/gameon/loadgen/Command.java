@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.loadgen;
+
+import java.util.Random;
+
+/**
+ * The kinds of thing a player does in the room, and how to recognise the room's
+ * reply to each.
+ */
+public enum Command {
+    /** Chat, answered by the chat message coming back. */
+    CHAT,
+    /** /look, answered by the location event. */
+    LOOK,
+    /** /go, answered by the playerLocation message. */
+    GO,
+    /**
+     * A drive command, answered by a message for just this player. With a car
+     * (or the car simulator) connected that is the car's reply, otherwise it is
+     * the room saying the car is not connected.
+     */
+    DRIVE;
+
+    private static final String[] EXITS = { "n", "s", "e", "w", "u", "d" };
+    private static final String[] DRIVES = { "/forwards 1", "/backwards 1", "/left 50", "/right 50" };
+
+    /**
+     * @param sequence
+     *            a number unique to this player, so chat is easy to spot in the
+     *            room's logs
+     * @return what the player types
+     */
+    String content(Random random, long sequence) {
+        switch (this) {
+            case CHAT:
+                return "Load test message " + sequence + " - has anyone seen the car?";
+            case LOOK:
+                return "/look";
+            case GO:
+                return "/go " + EXITS[random.nextInt(EXITS.length)];
+            default:
+                return DRIVES[random.nextInt(DRIVES.length)];
+        }
+    }
+
+    /**
+     * Work out which command a message from the room is replying to.
+     *
+     * @param frame
+     *            the message, e.g. <code>player,userid,{...}</code>
+     * @return the command, or null if the message is not a reply from this
+     *         player's point of view
+     */
+    static Command replyTo(String frame, String userId, String username) {
+        if (frame.startsWith("playerLocation,")) {
+            return GO;
+        }
+        if (!frame.startsWith("player,")) {
+            return null;
+        }
+        int comma = frame.indexOf(',', 7);
+        if (comma < 0) {
+            return null;
+        }
+        String target = frame.substring(7, comma);
+        if (frame.startsWith("{\"type\":\"chat\"", comma + 1)) {
+            // chat from other players is not a reply to us
+            return frame.indexOf("\"username\":\"" + username + "\"", comma) > 0 ? CHAT : null;
+        }
+        if (!target.equals(userId)) {
+            return null;
+        }
+        if (frame.startsWith("{\"type\":\"location\"", comma + 1)) {
+            return LOOK;
+        }
+        return DRIVE;
+    }
+}
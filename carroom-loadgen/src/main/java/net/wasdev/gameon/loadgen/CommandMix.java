@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.loadgen;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * How often players use each command, e.g. <code>chat:70,look:10,go:5,drive:15</code>.
+ * The weights are relative, so they do not have to add up to 100.
+ */
+public class CommandMix {
+    private final Command[] commands;
+    private final int[] cumulative;
+    private final int total;
+
+    public CommandMix(Map<Command, Integer> weights) {
+        commands = new Command[weights.size()];
+        cumulative = new int[weights.size()];
+        int sum = 0;
+        int i = 0;
+        for (Map.Entry<Command, Integer> e : weights.entrySet()) {
+            if (e.getValue() < 0) {
+                throw new IllegalArgumentException("A command weight cannot be negative : " + e);
+            }
+            sum += e.getValue();
+            commands[i] = e.getKey();
+            cumulative[i] = sum;
+            i++;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("At least one command needs a weight");
+        }
+        total = sum;
+    }
+
+    /**
+     * @param spec
+     *            comma separated command:weight pairs, e.g. chat:70,drive:30
+     */
+    public static CommandMix parse(String spec) {
+        Map<Command, Integer> weights = new EnumMap<>(Command.class);
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected command:weight but got : " + part);
+            }
+            weights.put(Command.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+        }
+        return new CommandMix(weights);
+    }
+
+    /**
+     * Pick a command according to the weights.
+     */
+    public Command next(Random random) {
+        int n = random.nextInt(total);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (n < cumulative[i]) {
+                return commands[i];
+            }
+        }
+        return commands[commands.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        int previous = 0;
+        for (int i = 0; i < commands.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(commands[i].name().toLowerCase()).append(':').append(cumulative[i] - previous);
+            previous = cumulative[i];
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.loadgen;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.websocket.ClientEndpointConfig;
+
+import org.glassfish.tyrus.client.ClientManager;
+import org.glassfish.tyrus.client.ClientProperties;
+
+/**
+ * Puts a room under the load of many players, as the mediator would, and
+ * reports how long the room takes to answer each kind of command.
+ *
+ * Settings are given as name=value arguments:
+ * <ul>
+ * <li>url - the room's WebSocket, default ws://localhost:9080/car/carRoom</li>
+ * <li>roomId - the room id the mediator would use, default CarRoom</li>
+ * <li>players - how many players to connect, default 100</li>
+ * <li>rampSeconds - how long to take connecting them, default 10</li>
+ * <li>durationSeconds - how long to run for once they are all connected, default 60</li>
+ * <li>rate - commands per second from each player, default 1</li>
+ * <li>mix - how often each command is used, default chat:70,look:10,go:5,drive:15</li>
+ * <li>timeoutMillis - how long to wait for a reply, default 5000</li>
+ * <li>connectThreads - how many players can be connecting at once, default 16</li>
+ * </ul>
+ *
+ * Drive commands are answered by the car, so run the room against the car
+ * simulator (carsim-app) for meaningful drive latencies.
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("url", "ws://localhost:9080/car/carRoom");
+        settings.put("roomId", "CarRoom");
+        settings.put("players", "100");
+        settings.put("rampSeconds", "10");
+        settings.put("durationSeconds", "60");
+        settings.put("rate", "1");
+        settings.put("mix", "chat:70,look:10,go:5,drive:15");
+        settings.put("timeoutMillis", "5000");
+        settings.put("connectThreads", "16");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 1 || !settings.containsKey(arg.substring(0, eq))) {
+                System.out.println("Unknown setting " + arg + ", expected name=value with a name from " + settings.keySet());
+                System.exit(1);
+            }
+            settings.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        System.out.println("Load generator settings : " + settings);
+
+        new LoadGenerator(settings).run();
+        System.exit(0);
+    }
+
+    private final URI url;
+    private final String roomId;
+    private final int players;
+    private final long rampMillis;
+    private final long durationMillis;
+    private final long periodNanos;
+    private final CommandMix mix;
+    private final long timeoutMillis;
+    private final int connectThreads;
+
+    private final Results results = new Results();
+    private final List<SimulatedPlayer> connected = new CopyOnWriteArrayList<>();
+
+    public LoadGenerator(Map<String, String> settings) {
+        url = URI.create(settings.get("url"));
+        roomId = settings.get("roomId");
+        players = Integer.parseInt(settings.get("players"));
+        rampMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(settings.get("rampSeconds")));
+        durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(settings.get("durationSeconds")));
+        periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / Double.parseDouble(settings.get("rate")));
+        mix = CommandMix.parse(settings.get("mix"));
+        timeoutMillis = Long.parseLong(settings.get("timeoutMillis"));
+        connectThreads = Integer.parseInt(settings.get("connectThreads"));
+    }
+
+    /**
+     * Connect the players, run for the duration, then disconnect them and print
+     * the results.
+     */
+    public void run() throws InterruptedException {
+        ClientManager client = ClientManager.createClient();
+        // one set of selector threads for every connection, rather than a set each
+        client.getProperties().put(ClientProperties.SHARED_CONTAINER, true);
+
+        ScheduledExecutorService ticker = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
+        ExecutorService connector = Executors.newFixedThreadPool(connectThreads);
+        ticker.scheduleAtFixedRate(() -> System.out.println(results.progress()), 5, 5, TimeUnit.SECONDS);
+
+        System.out.println("Connecting " + players + " players to " + url + " over " + rampMillis + "ms");
+        for (int i = 0; i < players; i++) {
+            int number = i;
+            ticker.schedule(() -> connector.execute(() -> connect(client, ticker, number)),
+                    rampMillis * i / Math.max(1, players), TimeUnit.MILLISECONDS);
+        }
+
+        Thread.sleep(rampMillis + durationMillis);
+
+        System.out.println("Disconnecting players");
+        ticker.shutdownNow();
+        connector.shutdownNow();
+        for (SimulatedPlayer player : connected) {
+            player.leave();
+        }
+        System.out.println();
+        results.report(System.out);
+    }
+
+    private void connect(ClientManager client, ScheduledExecutorService ticker, int number) {
+        String userId = "loadgen.Player" + number;
+        SimulatedPlayer player = new SimulatedPlayer(roomId, userId, "Player" + number, mix, timeoutMillis, results);
+        try {
+            client.connectToServer(player, ClientEndpointConfig.Builder.create().build(), url);
+        } catch (Exception e) {
+            results.failedConnect();
+            System.out.println("Unable to connect " + userId + " : " + e);
+            return;
+        }
+        connected.add(player);
+
+        // spread the players' commands out, rather than all sending at once
+        long offset = ThreadLocalRandom.current().nextLong(periodNanos);
+        long first = System.nanoTime() + offset;
+        ticker.scheduleAtFixedRate(new Runnable() {
+            private long ticks = 0;
+
+            @Override
+            public void run() {
+                player.tick(first + ticks++ * periodNanos);
+            }
+        }, offset, periodNanos, TimeUnit.NANOSECONDS);
+    }
+}
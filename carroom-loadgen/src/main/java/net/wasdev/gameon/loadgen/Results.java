@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.loadgen;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Everything the players have measured, shared between all of them.
+ */
+public class Results {
+
+    private static final class PerCommand {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+    }
+
+    private final Map<Command, PerCommand> commands = new EnumMap<>(Command.class);
+    private final AtomicLong connected = new AtomicLong();
+    private final AtomicLong entered = new AtomicLong();
+    private final AtomicLong failedConnects = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+
+    public Results() {
+        for (Command command : Command.values()) {
+            commands.put(command, new PerCommand());
+        }
+    }
+
+    void connected() {
+        connected.incrementAndGet();
+    }
+
+    void entered() {
+        entered.incrementAndGet();
+    }
+
+    void failedConnect() {
+        failedConnects.incrementAndGet();
+    }
+
+    void disconnected() {
+        disconnects.incrementAndGet();
+    }
+
+    void sent(Command command) {
+        commands.get(command).sent.incrementAndGet();
+    }
+
+    void sendFailed(Command command) {
+        commands.get(command).failed.incrementAndGet();
+    }
+
+    void replied(Command command, long micros) {
+        commands.get(command).latency.record(micros);
+    }
+
+    void timedOut(Command command) {
+        commands.get(command).timedOut.incrementAndGet();
+    }
+
+    /**
+     * One line summary, for progress while the test runs.
+     */
+    public String progress() {
+        long sent = 0;
+        long replies = 0;
+        long timeouts = 0;
+        for (PerCommand c : commands.values()) {
+            sent += c.sent.get();
+            replies += c.latency.getCount();
+            timeouts += c.timedOut.get();
+        }
+        return "players connected=" + connected.get() + " entered=" + entered.get() + " failed=" + failedConnects.get()
+                + " disconnected=" + disconnects.get() + ", commands sent=" + sent + " replies=" + replies
+                + " timeouts=" + timeouts;
+    }
+
+    /**
+     * Print the latency percentiles for each command, and for all of them.
+     */
+    public void report(PrintStream out) {
+        out.println(progress());
+        out.println();
+        out.println(String.format("%-8s %10s %10s %9s %7s %9s %9s %9s %9s %9s", "command", "sent", "replies",
+                "timeouts", "failed", "mean ms", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        LatencyHistogram all = new LatencyHistogram();
+        long sent = 0;
+        long timeouts = 0;
+        long failed = 0;
+        for (Map.Entry<Command, PerCommand> e : commands.entrySet()) {
+            PerCommand c = e.getValue();
+            line(out, e.getKey().name().toLowerCase(), c.sent.get(), c.timedOut.get(), c.failed.get(), c.latency);
+            all.add(c.latency);
+            sent += c.sent.get();
+            timeouts += c.timedOut.get();
+            failed += c.failed.get();
+        }
+        line(out, "all", sent, timeouts, failed, all);
+    }
+
+    private static void line(PrintStream out, String name, long sent, long timeouts, long failed, LatencyHistogram h) {
+        out.println(String.format("%-8s %10d %10d %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f", name, sent, h.getCount(),
+                timeouts, failed, h.getMeanMicros() / 1000.0, h.getPercentileMicros(50) / 1000.0,
+                h.getPercentileMicros(99) / 1000.0, h.getPercentileMicros(99.9) / 1000.0, h.getMaxMicros() / 1000.0));
+    }
+}
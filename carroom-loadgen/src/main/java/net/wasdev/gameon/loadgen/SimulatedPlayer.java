@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.loadgen;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+
+/**
+ * One player, connected to the room the way the mediator connects on their
+ * behalf: a WebSocket of their own, a roomHello when they arrive and a
+ * roomGoodbye when they leave.
+ *
+ * Commands are sent when the load generator says they are due, whether or not
+ * earlier ones have been answered. Each reply is matched to the oldest
+ * unanswered command of its kind, and its latency is measured from when that
+ * command was due rather than when it was actually sent, so a stalled room or
+ * load generator shows up as latency instead of being hidden.
+ */
+public class SimulatedPlayer extends Endpoint {
+
+    private final String roomId;
+    private final String userId;
+    private final String username;
+    private final CommandMix mix;
+    private final long timeoutNanos;
+    private final Results results;
+    private final Random random = new Random();
+
+    // when each unanswered command was due, oldest first
+    private final Map<Command, ArrayDeque<Long>> pending = new EnumMap<>(Command.class);
+    private long sequence = 0;
+
+    private volatile Session session;
+    private volatile boolean entered = false;
+    private volatile boolean leaving = false;
+
+    public SimulatedPlayer(String roomId, String userId, String username, CommandMix mix, long timeoutMillis,
+            Results results) {
+        this.roomId = roomId;
+        this.userId = userId;
+        this.username = username;
+        this.mix = mix;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.results = results;
+        for (Command command : Command.values()) {
+            pending.put(command, new ArrayDeque<>());
+        }
+    }
+
+    @Override
+    public void onOpen(Session s, EndpointConfig config) {
+        session = s;
+        results.connected();
+        s.addMessageHandler(new MessageHandler.Whole<String>() {
+            @Override
+            public void onMessage(String message) {
+                receive(message, System.nanoTime());
+            }
+        });
+        send("roomHello," + roomId + ",{\"username\":\"" + username + "\",\"userId\":\"" + userId
+                + "\",\"version\":1}");
+    }
+
+    @Override
+    public void onClose(Session s, CloseReason closeReason) {
+        entered = false;
+        if (!leaving) {
+            results.disconnected();
+            System.out.println("Player " + userId + " was disconnected : " + closeReason);
+        }
+    }
+
+    @Override
+    public void onError(Session s, Throwable thr) {
+        if (!leaving) {
+            System.out.println("Player " + userId + " had an error : " + thr);
+        }
+    }
+
+    /**
+     * Send the next command, if the player is in the room.
+     *
+     * @param dueNanos
+     *            when the command should have been sent, from System.nanoTime()
+     */
+    public void tick(long dueNanos) {
+        if (!entered || leaving) {
+            return;
+        }
+        expire(System.nanoTime());
+        Command command = mix.next(random);
+        String content = command.content(random, ++sequence);
+        synchronized (pending) {
+            pending.get(command).add(dueNanos);
+        }
+        if (send("room," + roomId + ",{\"username\":\"" + username + "\",\"userId\":\"" + userId
+                + "\",\"content\":\"" + content + "\"}")) {
+            results.sent(command);
+        } else {
+            synchronized (pending) {
+                pending.get(command).pollLast();
+            }
+            results.sendFailed(command);
+        }
+    }
+
+    /**
+     * Say goodbye and disconnect. Anything still unanswered is counted as timed
+     * out.
+     */
+    public void leave() {
+        leaving = true;
+        send("roomGoodbye," + roomId + ",{\"username\":\"" + username + "\",\"userId\":\"" + userId + "\"}");
+        Session s = session;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // going anyway
+            }
+        }
+        expire(Long.MAX_VALUE);
+    }
+
+    private void receive(String frame, long now) {
+        if (!entered) {
+            // the room describes itself once we have arrived, after which we can start
+            if (Command.replyTo(frame, userId, username) == Command.LOOK) {
+                entered = true;
+                results.entered();
+            }
+            return;
+        }
+        Command command = Command.replyTo(frame, userId, username);
+        if (command == null) {
+            return;
+        }
+        Long due;
+        synchronized (pending) {
+            due = pending.get(command).poll();
+        }
+        if (due != null) {
+            results.replied(command, TimeUnit.NANOSECONDS.toMicros(now - due));
+        }
+    }
+
+    // give up on commands that have waited longer than the timeout
+    private void expire(long now) {
+        synchronized (pending) {
+            for (Map.Entry<Command, ArrayDeque<Long>> e : pending.entrySet()) {
+                ArrayDeque<Long> queue = e.getValue();
+                while (!queue.isEmpty() && now - queue.peek() > timeoutNanos) {
+                    queue.poll();
+                    results.timedOut(e.getKey());
+                }
+            }
+        }
+    }
+
+    private boolean send(String message) {
+        Session s = session;
+        if (s == null || !s.isOpen()) {
+            return false;
+        }
+        try {
+            // only one message may be written to a session at a time
+            synchronized (this) {
+                s.getBasicRemote().sendText(message);
+            }
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+}
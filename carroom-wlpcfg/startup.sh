@@ -35,9 +35,48 @@ else
     export CAR_URL=ws://127.0.0.1:9080/LibertyCar/control
   fi
   echo "CAR_URL=$CAR_URL"
+  if [ "$CAR_DISPATCH_POLICY" == "" ]; then
+    export CAR_DISPATCH_POLICY=LEAST_LOADED
+  fi
+  if [ "$CAR_DRIVER" == "" ]; then
+    export CAR_DRIVER=websocket
+  fi
+  if [ "$CAR_FRAME_FORMAT" == "" ]; then
+    export CAR_FRAME_FORMAT=json
+  fi
   if [ "$REQUIRES_APP_REGISTRATION" == "" ]; then
     export REQUIRES_APP_REGISTRATION=false
   fi
+  if [ "$REGISTRATION_CACHE" == "" ]; then
+    export REGISTRATION_CACHE=/opt/ibm/wlp/usr/servers/defaultServer/registration.properties
+  fi
+  if [ "$FANOUT_QUEUE_SIZE" == "" ]; then
+    export FANOUT_QUEUE_SIZE=64
+  fi
+  if [ "$FANOUT_OVERFLOW_POLICY" == "" ]; then
+    export FANOUT_OVERFLOW_POLICY=DROP_OLDEST
+  fi
+  if [ "$REPLAY_BUFFER_SIZE" == "" ]; then
+    export REPLAY_BUFFER_SIZE=1024
+  fi
+  if [ "$LOG_SAMPLING" == "" ]; then
+    export LOG_SAMPLING=pulse:1
+  fi
+  if [ "$LOG_RATE_LIMIT" == "" ]; then
+    export LOG_RATE_LIMIT=connection:50,command:100,pulse:20,car:20
+  fi
+  if [ "$JOURNAL_DIR" == "" ]; then
+    export JOURNAL_DIR=none
+  fi
+  if [ "$JOURNAL_SEGMENT_MB" == "" ]; then
+    export JOURNAL_SEGMENT_MB=64
+  fi
+  if [ "$JOURNAL_SEGMENTS" == "" ]; then
+    export JOURNAL_SEGMENTS=16
+  fi
+  if [ "$SNAPSHOT_CACHE_SIZE" == "" ]; then
+    export SNAPSHOT_CACHE_SIZE=32
+  fi
 
   /opt/ibm/wlp/bin/server run defaultServer
 fi
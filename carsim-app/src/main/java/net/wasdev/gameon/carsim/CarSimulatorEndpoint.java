@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carsim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.naming.InitialContext;
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.EndpointConfig;
+import javax.websocket.OnClose;
+import javax.websocket.OnMessage;
+import javax.websocket.OnOpen;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpoint;
+
+/**
+ * Stands in for the LibertyCar <code>/control</code> endpoint, so the room can
+ * be load tested without a real car. Point <code>CAR_URL</code> at it.
+ *
+ * How the car misbehaves is set with JNDI entries, have a look in the
+ * gameon-carsim server.xml.
+ */
+@ServerEndpoint("/control")
+public class CarSimulatorEndpoint {
+
+    private static final ScheduledExecutorService replies = Executors.newScheduledThreadPool(2);
+
+    private static final SimulatedCar.Settings settings = new SimulatedCar.Settings(
+            getLongJNDIEntry("carSimDelayMillis", 20),
+            getLongJNDIEntry("carSimJitterMillis", 10),
+            getDoubleJNDIEntry("carSimDropRate", 0),
+            getLongJNDIEntry("carSimDisconnectEvery", 0),
+            Boolean.parseBoolean(String.valueOf(getJNDIEntry("carSimReplyEveryPulse"))),
+            !"false".equalsIgnoreCase(String.valueOf(getJNDIEntry("carSimAcceptBinary"))));
+
+    static {
+        System.out.println("Car simulator settings : " + settings);
+    }
+
+    private SimulatedCar car;
+
+    @OnOpen
+    public void onOpen(Session session, EndpointConfig ec) {
+        System.out.println("Room connected to the car simulator");
+        car = new SimulatedCar(settings, replies, message -> reply(session, message), () -> disconnect(session));
+    }
+
+    @OnClose
+    public void onClose(Session session, CloseReason r) {
+        System.out.println("Room disconnected from the car simulator : " + r + " after " + car.getReceivedCount()
+                + " instructions, " + car.getDroppedCount() + " dropped, " + car.getRepliedCount() + " replies");
+    }
+
+    @OnMessage
+    public void receiveMessage(String message, Session session) {
+        car.receive(message);
+    }
+
+    @OnMessage
+    public void receiveBinary(ByteBuffer message, Session session) {
+        if (!settings.isAcceptBinary()) {
+            // what firmware that only speaks JSON does, the room falls back to text
+            try {
+                session.close(new CloseReason(CloseCodes.CANNOT_ACCEPT, "Binary frames are not supported"));
+            } catch (IOException e) {
+                // it is going anyway
+            }
+            return;
+        }
+        car.receive(message);
+    }
+
+    private static void reply(Session session, String message) {
+        if (!session.isOpen()) {
+            return;
+        }
+        try {
+            synchronized (session) {
+                session.getBasicRemote().sendText(message);
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to reply to the room : " + e);
+        }
+    }
+
+    private static void disconnect(Session session) {
+        try {
+            session.close(new CloseReason(CloseCodes.GOING_AWAY, "Simulated disconnect"));
+        } catch (IOException e) {
+            // it is going anyway
+        }
+    }
+
+    private static Object getJNDIEntry(String name) {
+        try {
+            return new InitialContext().lookup(name);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static long getLongJNDIEntry(String name, long defaultValue) {
+        try {
+            return Long.parseLong(String.valueOf(getJNDIEntry(name)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static double getDoubleJNDIEntry(String name, double defaultValue) {
+        try {
+            return Double.parseDouble(String.valueOf(getJNDIEntry(name)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
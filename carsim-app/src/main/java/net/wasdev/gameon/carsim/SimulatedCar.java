@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package net.wasdev.gameon.carsim;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A pretend car. It understands the instructions the room sends, e.g.
+ * <code>{'id':'user', 'msggrp':'...','throttle':20}</code> or the equivalent
+ * binary frame, and answers with a message ending in the user id, as the real
+ * car does.
+ *
+ * It has no WebSocket code of its own, so it can be driven in-process as well as
+ * from {@link CarSimulatorEndpoint}.
+ */
+public class SimulatedCar {
+
+    /**
+     * How badly the car behaves.
+     */
+    public static final class Settings {
+        private final long delayMillis;
+        private final long jitterMillis;
+        private final double dropRate;
+        private final long disconnectEvery;
+        private final boolean replyEveryPulse;
+        private final boolean acceptBinary;
+
+        /**
+         * @param delayMillis
+         *            how long the car takes to process an instruction
+         * @param jitterMillis
+         *            the most the delay varies by, either way
+         * @param dropRate
+         *            the fraction of instructions ignored, 0 to 1
+         * @param disconnectEvery
+         *            disconnect after this many instructions, 0 for never
+         * @param replyEveryPulse
+         *            reply to every pulse rather than once per message group
+         * @param acceptBinary
+         *            understand binary frames, or refuse them like older firmware
+         */
+        public Settings(long delayMillis, long jitterMillis, double dropRate, long disconnectEvery, boolean replyEveryPulse,
+                boolean acceptBinary) {
+            this.delayMillis = delayMillis;
+            this.jitterMillis = jitterMillis;
+            this.dropRate = dropRate;
+            this.disconnectEvery = disconnectEvery;
+            this.replyEveryPulse = replyEveryPulse;
+            this.acceptBinary = acceptBinary;
+        }
+
+        public boolean isAcceptBinary() {
+            return acceptBinary;
+        }
+
+        @Override
+        public String toString() {
+            return "delay=" + delayMillis + "ms, jitter=" + jitterMillis + "ms, dropRate=" + dropRate + ", disconnectEvery="
+                    + disconnectEvery + ", replyEveryPulse=" + replyEveryPulse + ", acceptBinary=" + acceptBinary;
+        }
+    }
+
+    private static final int REMEMBERED_GROUPS = 1024;
+
+    private final Settings settings;
+    private final ScheduledExecutorService executor;
+    private final Consumer<String> replies;
+    private final Runnable disconnect;
+    private final Random random = new Random();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong replied = new AtomicLong();
+
+    // message groups already answered, when only replying once per group
+    private final Map<String, Boolean> groups = new LinkedHashMap<String, Boolean>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > REMEMBERED_GROUPS;
+        }
+    };
+
+    /**
+     * @param settings
+     *            how badly to behave
+     * @param executor
+     *            runs the delayed replies
+     * @param replies
+     *            sends a reply back to the room
+     * @param disconnect
+     *            drops the connection to the room
+     */
+    public SimulatedCar(Settings settings, ScheduledExecutorService executor, Consumer<String> replies, Runnable disconnect) {
+        this.settings = settings;
+        this.executor = executor;
+        this.replies = replies;
+        this.disconnect = disconnect;
+    }
+
+    /**
+     * Process one instruction frame from the room.
+     */
+    public void receive(String frame) {
+        if (misbehave()) {
+            return;
+        }
+        instruction(field(frame, "'id':'"), field(frame, "'msggrp':'"), action(frame));
+    }
+
+    /**
+     * Process one binary instruction frame from the room, laid out as the
+     * room's BinaryCarFrameCodec describes.
+     */
+    public void receive(ByteBuffer frame) {
+        if (misbehave()) {
+            return;
+        }
+        try {
+            frame.get(); // version
+            byte kind = frame.get();
+            short amount = frame.getShort();
+            long group = frame.getLong();
+            byte[] userid = new byte[frame.get() & 0xff];
+            frame.get(userid);
+            instruction(new String(userid, StandardCharsets.UTF_8), Long.toHexString(group),
+                    (kind == 1 ? "'throttle':" : "'turning':") + amount);
+        } catch (RuntimeException e) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    // disconnect or drop, as the settings say
+    private boolean misbehave() {
+        long count = received.incrementAndGet();
+        if (settings.disconnectEvery > 0 && count % settings.disconnectEvery == 0) {
+            disconnect.run();
+            return true;
+        }
+        if (settings.dropRate > 0 && random.nextDouble() < settings.dropRate) {
+            dropped.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void instruction(String userid, String group, String action) {
+        if (userid == null) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (!settings.replyEveryPulse && group != null) {
+            synchronized (groups) {
+                if (groups.put(group, Boolean.TRUE) != null) {
+                    return;
+                }
+            }
+        }
+
+        String reply = "Car simulator did " + action + " msggrp:" + group + " for " + userid;
+        long delay = settings.delayMillis;
+        if (settings.jitterMillis > 0) {
+            delay += (long) ((random.nextDouble() * 2 - 1) * settings.jitterMillis);
+        }
+        executor.schedule(() -> {
+            replied.incrementAndGet();
+            replies.accept(reply);
+        }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getRepliedCount() {
+        return replied.get();
+    }
+
+    // the value of a quoted field, e.g. 'id':'value'
+    private static String field(String frame, String prefix) {
+        int start = frame.indexOf(prefix);
+        if (start < 0) {
+            return null;
+        }
+        start += prefix.length();
+        int end = frame.indexOf('\'', start);
+        return end < 0 ? null : frame.substring(start, end);
+    }
+
+    // whatever follows the message group, e.g. 'throttle':20
+    private static String action(String frame) {
+        int group = frame.indexOf("'msggrp':'");
+        int start = group < 0 ? -1 : frame.indexOf(',', group);
+        int end = frame.lastIndexOf('}');
+        if (start < 0 || end < start) {
+            return "nothing";
+        }
+        return frame.substring(start + 1, end).trim();
+    }
+}